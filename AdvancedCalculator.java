@@ -1,24 +1,50 @@
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class AdvancedCalculator {
     private static final String OPERATORS = "+-*/^";
-    private static final String FUNCTIONS = "sin|cos|tan|log|ln|sqrt|abs";
-    private static final Pattern VARIABLE_PATTERN = Pattern.compile("x");
+    // Internal token for a minus sign in front of a name or parenthesis, e.g. -x or -(2+3).
+    // Not a letter, so no saved or registered function name can ever clash with it.
+    static final String NEGATE = "~";
+    private static final DoubleUnaryOperator NEGATE_OPERATOR = a -> -a;
+    // A lone x, not the x inside a function name such as exp or max
+    private static final Pattern VARIABLE_PATTERN = Pattern.compile("(?<![A-Za-z])x(?![A-Za-z])");
+    
+    // Built-in and plugin functions such as sin or atan
+    private final FunctionRegistry functions;
     
     // For storing and evaluating custom functions
-    private final Map<String, String> savedFunctions = new HashMap<>();
+    // Concurrent so Calculate can evaluate off the EDT while functions are being saved
+    private final Map<String, String> savedFunctions = new ConcurrentHashMap<>();
+    // Bumped on every saveFunction so compiled curves know to pick up new definitions
+    private volatile int definitionsVersion = 0;
+    
+    public AdvancedCalculator() {
+        this(FunctionRegistry.getDefault());
+    }
     
-    public AdvancedCalculator() {}
+    public AdvancedCalculator(FunctionRegistry functions) {
+        this.functions = functions;
+    }
     
     public double evaluate(String expression) throws CalculatorException {
         return evaluate(expression, 0);
     }
     
     public double evaluate(String expression, double xValue) throws CalculatorException {
+        return evaluate(expression, xValue, new EvaluationBudget());
+    }
+    
+    // Evaluates under the given budget; cancelling it from another thread stops the evaluation
+    public double evaluate(String expression, double xValue, EvaluationBudget budget) throws CalculatorException {
+        budget.enter();
         try {
+            budget.charge(expression.length());
+            
             // Replace variables with the given value.
             expression = replaceVariables(expression, xValue);
             
@@ -36,11 +62,11 @@ public class AdvancedCalculator {
                     while (matcher.find()) {
                         String arg = matcher.group(1);
                         // Evaluate the argument first
-                        double argValue = evaluate(arg, xValue);
+                        double argValue = evaluate(arg, xValue, budget);
                         // Replace x in the function expression with the arg value
                         String replacement = replaceVariables(funcExpr, argValue);
                         // Evaluate the resulting expression
-                        double result = evaluate(replacement, xValue);
+                        double result = evaluate(replacement, xValue, budget);
                         matcher.appendReplacement(sb, Double.toString(result));
                     }
                     matcher.appendTail(sb);
@@ -49,26 +75,50 @@ public class AdvancedCalculator {
             }
             
             // Parse and evaluate the expression
-            return parseExpression(tokenize(expression));
+            List<String> tokens = tokenize(expression);
+            budget.charge(tokens.size());
+            return parseExpression(tokens);
         } catch (IllegalArgumentException e) {
             throw new CalculatorException("Error evaluating expression: " + e.getMessage());
         } catch (CalculatorException e) {
             throw e;
+        } finally {
+            budget.exit();
         }
     }
     
     public Function<Double, Double> createFunction(String expression) {
-        return x -> {
-            try {
-                return evaluate(expression, x);
-            } catch (CalculatorException e) {
-                return Double.NaN;
-            }
-        };
+        return new CompiledFunction(expression);
+    }
+    
+    // Compiles the expression once into a tree that evaluates with IEEE semantics:
+    // domain errors yield NaN or Infinity instead of throwing, so sampling loops stay cheap.
+    public CompiledExpression compile(String expression) throws CalculatorException {
+        return compile(expression, new EvaluationBudget());
+    }
+    
+    // Compiles under the given budget; cancelling it from another thread abandons the compile
+    public CompiledExpression compile(String expression, EvaluationBudget budget) throws CalculatorException {
+        budget.enter();
+        try {
+            return new CompiledExpression(expression, compileExpression(expression, new HashSet<>(), new HashMap<>(), budget));
+        } catch (IllegalArgumentException e) {
+            throw new CalculatorException("Error compiling expression: " + e.getMessage());
+        } finally {
+            budget.exit();
+        }
+    }
+    
+    // Compiles now (typically off the EDT) and returns a graphable function that only
+    // recompiles if saved functions change afterwards
+    public Function<Double, Double> compileFunction(String expression, EvaluationBudget budget) throws CalculatorException {
+        int version = definitionsVersion;
+        return new CompiledFunction(expression, compile(expression, budget), version);
     }
     
     public void saveFunction(String name, String expression) {
         savedFunctions.put(name, expression);
+        definitionsVersion++;
     }
     
     public String getFunctionExpression(String name) {
@@ -93,13 +143,17 @@ public class AdvancedCalculator {
         for (int i = 0; i < expression.length(); i++) {
             char c = expression.charAt(i);
             
-            if (c == '(' || c == ')' || OPERATORS.indexOf(c) >= 0) {
+            if (c == '(' || c == ')' || c == ',' || OPERATORS.indexOf(c) >= 0) {
                 // Handle special case for negative numbers
-                if (c == '-' && (i == 0 || expression.charAt(i - 1) == '(' || OPERATORS.indexOf(expression.charAt(i - 1)) >= 0)) {
+                if (c == '-' && (i == 0 || expression.charAt(i - 1) == '(' || expression.charAt(i - 1) == ','
+                        || OPERATORS.indexOf(expression.charAt(i - 1)) >= 0)) {
                     currentToken.append(c); // Negative sign is part of the number
                 } else {
-                    // Add the current token if any
-                    if (currentToken.length() > 0) {
+                    // Add the current token if any; a lone minus before '(' negates the group
+                    if (c == '(' && currentToken.toString().equals("-")) {
+                        tokens.add(NEGATE);
+                        currentToken = new StringBuilder();
+                    } else if (currentToken.length() > 0) {
                         tokens.add(currentToken.toString());
                         currentToken = new StringBuilder();
                     }
@@ -118,7 +172,11 @@ public class AdvancedCalculator {
                 
                 // Check if this is a function or a variable
                 String token = currentToken.toString();
-                if (token.matches(FUNCTIONS) || savedFunctions.containsKey(token)) {
+                if (token.startsWith("-")) {
+                    tokens.add(NEGATE);
+                    token = token.substring(1);
+                }
+                if (functions.contains(token) || savedFunctions.containsKey(token)) {
                     tokens.add(token);
                     currentToken = new StringBuilder();
                     
@@ -178,16 +236,24 @@ public class AdvancedCalculator {
                 }
                 
                 // If the top of the operators stack is a function, process it
-                if (!operators.isEmpty() && operators.peek().matches(FUNCTIONS)) {
+                if (!operators.isEmpty() && isFunction(operators.peek())) {
                     processFunction(numbers, operators);
                 }
+            } else if (token.equals(",")) {
+                // Argument separator: finish the argument, keep the function's parenthesis open
+                while (!operators.isEmpty() && !operators.peek().equals("(")) {
+                    processOperator(numbers, operators);
+                }
+                if (operators.isEmpty()) {
+                    throw new CalculatorException("Comma outside function arguments");
+                }
             } else if (OPERATORS.contains(token)) {
                 // Operator
                 while (!operators.isEmpty() && precedence(operators.peek()) >= precedence(token)) {
                     processOperator(numbers, operators);
                 }
                 operators.push(token);
-            } else if (token.matches(FUNCTIONS)) {
+            } else if (isFunction(token)) {
                 // Function
                 operators.push(token);
             } else if (token.equals("x")) {
@@ -215,7 +281,8 @@ public class AdvancedCalculator {
     private void processOperator(Stack<Double> numbers, Stack<String> operators) throws CalculatorException {
         String operator = operators.pop();
         
-        if (operator.matches(FUNCTIONS)) {
+        if (isFunction(operator)) {
+            operators.push(operator);
             processFunction(numbers, operators);
             return;
         }
@@ -245,10 +312,28 @@ public class AdvancedCalculator {
     private void processFunction(Stack<Double> numbers, Stack<String> operators) throws CalculatorException {
         String function = operators.pop();
         
-        if (numbers.isEmpty()) {
+        // Unary minus is part of the syntax, not a registered function
+        if (function.equals(NEGATE)) {
+            if (numbers.isEmpty()) {
+                throw new CalculatorException("Insufficient operands for operator: -");
+            }
+            numbers.push(-numbers.pop());
+            return;
+        }
+        
+        FunctionRegistry.Kernel kernel = functions.get(function);
+        
+        if (numbers.size() < kernel.arity()) {
             throw new CalculatorException("Insufficient operands for function: " + function);
         }
         
+        if (kernel.arity() == 2) {
+            double b = numbers.pop();
+            double a = numbers.pop();
+            numbers.push(kernel.binary().applyAsDouble(a, b));
+            return;
+        }
+        
         double a = numbers.pop();
         
         numbers.push(switch (function) {
@@ -273,8 +358,8 @@ public class AdvancedCalculator {
                 }
                 yield Math.sqrt(a);
             }
-            case "abs" -> Math.abs(a);
-            default -> throw new CalculatorException("Unknown function: " + function);
+            // Plugin functions and the rest of the built-ins have no domain checks
+            default -> kernel.unary().applyAsDouble(a);
         });
     }
     
@@ -285,13 +370,177 @@ public class AdvancedCalculator {
             return 2;
         } else if (operator.equals("^")) {
             return 3;
-        } else if (operator.matches(FUNCTIONS)) {
+        } else if (isFunction(operator) || savedFunctions.containsKey(operator)) {
             return 4;
         } else {
             return 0; // For '('
         }
     }
     
+    private boolean isFunction(String token) {
+        return token.equals(NEGATE) || functions.contains(token);
+    }
+    
+    // Same shunting-yard pass as parseExpression, but builds a tree with x left symbolic
+    // and saved functions linked in as calls to their own compiled bodies.
+    // Each saved function body is compiled once per compile() and shared by all its calls, so
+    // chains of saved functions that call each other several times do not blow up.
+    private CompiledExpression.Node compileExpression(String expression, Set<String> expanding,
+                                                      Map<String, CompiledExpression.Node> bodies,
+                                                      EvaluationBudget budget) throws CalculatorException {
+        List<String> tokens = tokenize(expression);
+        budget.charge(tokens.size());
+        if (tokens.isEmpty()) {
+            throw new CalculatorException("Empty expression");
+        }
+        
+        Stack<CompiledExpression.Node> operands = new Stack<>();
+        Stack<String> operators = new Stack<>();
+        
+        for (String token : tokens) {
+            if (token.matches("-?\\d+(\\.\\d+)?")) {
+                operands.push(new CompiledExpression.Constant(Double.parseDouble(token)));
+            } else if (token.equals("x")) {
+                operands.push(CompiledExpression.Variable.INSTANCE);
+            } else if (token.equals("(")) {
+                operators.push(token);
+            } else if (token.equals(")")) {
+                while (!operators.isEmpty() && !operators.peek().equals("(")) {
+                    compileOperator(operands, operators, expanding, bodies, budget);
+                }
+                
+                if (!operators.isEmpty() && operators.peek().equals("(")) {
+                    operators.pop();
+                } else {
+                    throw new CalculatorException("Mismatched parentheses");
+                }
+                
+                if (!operators.isEmpty() && precedence(operators.peek()) == 4) {
+                    compileOperator(operands, operators, expanding, bodies, budget);
+                }
+            } else if (token.equals(",")) {
+                while (!operators.isEmpty() && !operators.peek().equals("(")) {
+                    compileOperator(operands, operators, expanding, bodies, budget);
+                }
+                if (operators.isEmpty()) {
+                    throw new CalculatorException("Comma outside function arguments");
+                }
+            } else if (OPERATORS.contains(token)) {
+                while (!operators.isEmpty() && precedence(operators.peek()) >= precedence(token)) {
+                    compileOperator(operands, operators, expanding, bodies, budget);
+                }
+                operators.push(token);
+            } else if (isFunction(token) || savedFunctions.containsKey(token)) {
+                operators.push(token);
+            } else {
+                throw new CalculatorException("Unknown token: " + token);
+            }
+        }
+        
+        while (!operators.isEmpty()) {
+            if (operators.peek().equals("(")) {
+                throw new CalculatorException("Mismatched parentheses");
+            }
+            compileOperator(operands, operators, expanding, bodies, budget);
+        }
+        
+        if (operands.size() != 1) {
+            throw new CalculatorException("Invalid expression");
+        }
+        
+        return operands.pop();
+    }
+    
+    private void compileOperator(Stack<CompiledExpression.Node> operands, Stack<String> operators,
+                                 Set<String> expanding, Map<String, CompiledExpression.Node> bodies,
+                                 EvaluationBudget budget) throws CalculatorException {
+        String operator = operators.pop();
+        
+        if (operator.equals(NEGATE)) {
+            if (operands.isEmpty()) {
+                throw new CalculatorException("Insufficient operands for operator: -");
+            }
+            operands.push(new CompiledExpression.Unary(NEGATE, NEGATE_OPERATOR, operands.pop()));
+        } else if (savedFunctions.containsKey(operator)) {
+            if (operands.isEmpty()) {
+                throw new CalculatorException("Insufficient operands for function: " + operator);
+            }
+            CompiledExpression.Node body = bodies.get(operator);
+            if (body == null) {
+                if (!expanding.add(operator)) {
+                    throw new CalculatorException("Recursive definition of function: " + operator);
+                }
+                // Same depth limit as evaluate, so a chain that compiles also calculates
+                budget.enter();
+                try {
+                    body = compileExpression(savedFunctions.get(operator), expanding, bodies, budget);
+                } finally {
+                    budget.exit();
+                }
+                expanding.remove(operator);
+                bodies.put(operator, body);
+            }
+            operands.push(new CompiledExpression.Call(operator, body, operands.pop()));
+        } else if (isFunction(operator)) {
+            // Resolve the kernel now so evaluation calls it directly
+            FunctionRegistry.Kernel kernel = functions.get(operator);
+            if (operands.size() < kernel.arity()) {
+                throw new CalculatorException("Insufficient operands for function: " + operator);
+            }
+            if (kernel.arity() == 2) {
+                CompiledExpression.Node b = operands.pop();
+                CompiledExpression.Node a = operands.pop();
+                operands.push(new CompiledExpression.BinaryFunction(operator, kernel.binary(), a, b));
+            } else {
+                operands.push(new CompiledExpression.Unary(operator, kernel.unary(), operands.pop()));
+            }
+        } else {
+            if (operands.size() < 2) {
+                throw new CalculatorException("Insufficient operands for operator: " + operator);
+            }
+            CompiledExpression.Node b = operands.pop();
+            CompiledExpression.Node a = operands.pop();
+            operands.push(new CompiledExpression.Binary(operator.charAt(0), a, b));
+        }
+    }
+    
+    // Function handed to the graph: compiled once, recompiled only when saved functions change.
+    // The graph reads the compiled tree directly to share work between curves.
+    final class CompiledFunction implements Function<Double, Double> {
+        private final String expression;
+        private int version = -1;
+        private CompiledExpression compiled;
+        
+        CompiledFunction(String expression) {
+            this.expression = expression;
+        }
+        
+        CompiledFunction(String expression, CompiledExpression compiled, int version) {
+            this.expression = expression;
+            this.compiled = compiled;
+            this.version = version;
+        }
+        
+        // Current compiled form, or null if the expression does not compile
+        CompiledExpression current() {
+            if (version != definitionsVersion) {
+                version = definitionsVersion;
+                try {
+                    compiled = compile(expression);
+                } catch (CalculatorException e) {
+                    compiled = null;
+                }
+            }
+            return compiled;
+        }
+        
+        @Override
+        public Double apply(Double x) {
+            CompiledExpression current = current();
+            return current == null ? Double.NaN : current.evaluate(x);
+        }
+    }
+    
     // Custom exception class for calculator errors
     public static class CalculatorException extends Exception {
         public CalculatorException(String message) {
@@ -1,27 +1,73 @@
 import java.awt.*;
-import java.util.HashMap;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.*; // Import Logger
 import javax.swing.border.EmptyBorder; // Import Level
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 public class CalculatorMain extends JFrame {
+    // Startup mode: show the frame first, build secondary panels and warm the evaluator afterwards
+    private static final boolean FAST_STARTUP = Boolean.getBoolean("calculator.fastStartup");
+    // Print time-to-first-paint, and optionally exit once startup work is done (measurement/CDS training)
+    private static final boolean REPORT_STARTUP = Boolean.getBoolean("calculator.reportStartup");
+    private static final boolean EXIT_AFTER_STARTUP = Boolean.getBoolean("calculator.exitAfterStartup");
+    // Where saved functions, curves and the viewport are kept between runs
+    private static final Path SESSION_FILE = Paths.get(System.getProperty("calculator.sessionFile",
+            Paths.get(System.getProperty("user.home"), ".graphing-calculator.session").toString()));
+
+    // The result history keeps this many lines; older ones are dropped from the top
+    private static final int MAX_HISTORY_LINES = 500;
+    // Largest value table; rows are computed on demand, this only keeps JTable's pixel height in range
+    private static final int MAX_TABLE_ROWS = 10_000_000;
+
+    // Representative inputs used to warm up the evaluator in the background
+    private static final String[] WARM_UP_EXPRESSIONS = {
+        "2*x^2 + 3*x - 5", "sin(3.14*x)", "log(100)", "sqrt(x) + abs(x)",
+        "cos(x)/x", "ln(x^2+1)", "tan(x) - (x+1)*(x-1)", "-x^3/6 + x"
+    };
+
     private final GraphingCalculator graphPanel;
     private final AdvancedCalculator calculator;
     
     private JTextField expressionField;
     private JTextArea resultArea;
+    private final Deque<Integer> historyLineLengths = new ArrayDeque<>();
     private JComboBox<String> functionComboBox;
     private JTextField functionNameField;
     private JButton saveButton;
     private JButton calculateButton;
+    private JButton cancelButton;
+    private JProgressBar progressBar;
     private JButton graphButton;
     private JButton clearGraphButton;
     private JButton zoomInButton;
     private JButton zoomOutButton;
     private JButton resetViewButton;
+    private JButton autoFitButton;
+    private JCheckBox continuousFitCheckBox;
     
     private final Map<String, Color> functionColors;
     private final Color[] availableColors = {
@@ -32,21 +78,97 @@ public class CalculatorMain extends JFrame {
     };
     private int nextColorIndex = 0;
     
+    // Budget of the Calculate running in the background, null when idle
+    private EvaluationBudget runningBudget;
+
+    private JPanel southPanel;
+    private boolean secondaryUIBuilt = false;
+    private boolean startupHandled = false;
+    private Thread warmUpThread;
+    
+    // Null when the session file could not be opened; the calculator then just doesn't persist
+    private SessionStore sessionStore;
+    
+    // Live preview: keystrokes restart the debounce timer, compiles run on one background thread
+    // and a newer keystroke cancels the compile in flight, so typing never queues work
+    private static final int PREVIEW_DELAY_MS = 150;
+    private final ExecutorService previewCompiler = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "preview-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Timer previewTimer;
+    private Future<?> previewTask;
+    private EvaluationBudget previewBudget;
+    private String previewedText = "";
+
     public CalculatorMain() {
         // Initialize components
         calculator = new AdvancedCalculator();
         graphPanel = new GraphingCalculator();
-        functionColors = new HashMap<>();
+        functionColors = new LinkedHashMap<>(); // Plot order, used for value table columns
         
         // Set up the UI
         setupUI();
+        restoreSession();
         
         setTitle("Advanced Graphing Calculator");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                closeSession();
+            }
+        });
         pack();
         setLocationRelativeTo(null);
     }
     
+    private void restoreSession() {
+        try {
+            sessionStore = SessionStore.open(SESSION_FILE);
+        } catch (IOException ex) {
+            Logger.getLogger(CalculatorMain.class.getName()).log(Level.WARNING, "Session not restored", ex);
+            return;
+        }
+        
+        SessionStore.Session session = sessionStore.getLoadedSession();
+        for (Map.Entry<String, String> entry : session.getFunctions().entrySet()) {
+            calculator.saveFunction(entry.getKey(), entry.getValue());
+        }
+        for (SessionStore.Curve curve : session.getCurves()) {
+            graphPanel.addFunction(calculator.createFunction(curve.expression()), curve.color());
+            functionColors.put(curve.expression(), curve.color());
+            getNextColor();
+        }
+        double[] viewport = session.getViewport();
+        if (viewport != null) {
+            try {
+                graphPanel.setView(viewport[0], viewport[1], viewport[2], viewport[3]);
+            } catch (IllegalArgumentException ex) {
+                graphPanel.resetView();
+            }
+        }
+        
+        // The combo box already exists unless fast startup deferred it; it is then filled when built
+        if (functionComboBox != null) {
+            updateFunctionComboBox();
+        }
+    }
+    
+    private void closeSession() {
+        if (sessionStore == null) {
+            return;
+        }
+        sessionStore.setViewport(graphPanel.getXMin(), graphPanel.getXMax(), graphPanel.getYMin(), graphPanel.getYMax());
+        try {
+            sessionStore.close();
+        } catch (IOException ex) {
+            Logger.getLogger(CalculatorMain.class.getName()).log(Level.WARNING, "Session not saved", ex);
+        }
+        sessionStore = null;
+    }
+    
     private void setupUI() {
         // Main panel with BorderLayout
         JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
@@ -61,33 +183,54 @@ public class CalculatorMain extends JFrame {
         expressionField.setToolTipText("Enter an expression (e.g., 2*x^2 + 3*x - 5)");
         northPanel.add(expressionField, BorderLayout.CENTER);
         
+        previewTimer = new Timer(PREVIEW_DELAY_MS, e -> startPreviewCompile());
+        previewTimer.setRepeats(false);
+        expressionField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                previewTimer.restart();
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                previewTimer.restart();
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                previewTimer.restart();
+            }
+        });
+        
         // Buttons panel
-        JPanel buttonPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 3, 5, 0));
         
         calculateButton = new JButton("Calculate");
         calculateButton.setFont(new Font("Arial", Font.BOLD, 14));
-        calculateButton.addActionListener(e -> {
-            try {
-                calculate();
-            } catch (IllegalArgumentException ex) {
-                JOptionPane.showMessageDialog(this, "Invalid input: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            } catch (ArithmeticException ex) {
-                JOptionPane.showMessageDialog(this, "Math error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            } catch (AdvancedCalculator.CalculatorException ex) {
-                JOptionPane.showMessageDialog(this, "Calculation error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            } catch (RuntimeException ex) {
-                JOptionPane.showMessageDialog(this, "Unexpected error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            }
-        });
+        calculateButton.addActionListener(e -> calculate());
+        
+        cancelButton = new JButton("Cancel");
+        cancelButton.setFont(new Font("Arial", Font.BOLD, 14));
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(e -> cancelCalculation());
         
         graphButton = new JButton("Graph");
         graphButton.setFont(new Font("Arial", Font.BOLD, 14));
         graphButton.addActionListener(e -> graph());
         
         buttonPanel.add(calculateButton);
+        buttonPanel.add(cancelButton);
         buttonPanel.add(graphButton);
         northPanel.add(buttonPanel, BorderLayout.EAST);
         
+        // Shown while a calculation runs in the background
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(true);
+        progressBar.setString("Calculating...");
+        progressBar.setVisible(false);
+        northPanel.add(progressBar, BorderLayout.SOUTH);
+        
         // Add to main panel
         mainPanel.add(northPanel, BorderLayout.NORTH);
         
@@ -101,27 +244,50 @@ public class CalculatorMain extends JFrame {
         zoomOutButton = new JButton("-");
         resetViewButton = new JButton("Reset");
         clearGraphButton = new JButton("Clear Graphs");
+        autoFitButton = new JButton("Auto-fit");
+        autoFitButton.setToolTipText("Fit the y range to the plotted curves");
+        continuousFitCheckBox = new JCheckBox("Keep fitted");
+        continuousFitCheckBox.setToolTipText("Refit the y range whenever the x range or curves change");
         
         zoomInButton.addActionListener(e -> graphPanel.zoomIn());
         zoomOutButton.addActionListener(e -> graphPanel.zoomOut());
         resetViewButton.addActionListener(e -> graphPanel.resetView());
+        autoFitButton.addActionListener(e -> graphPanel.autoFitY());
+        continuousFitCheckBox.addActionListener(e -> graphPanel.setContinuousAutoFit(continuousFitCheckBox.isSelected()));
         clearGraphButton.addActionListener(e -> {
             graphPanel.clearFunctions();
             functionColors.clear();
             nextColorIndex = 0;
+            if (sessionStore != null) {
+                sessionStore.clearCurves();
+            }
         });
         
         zoomPanel.add(zoomInButton);
         zoomPanel.add(zoomOutButton);
         zoomPanel.add(resetViewButton);
+        zoomPanel.add(autoFitButton);
+        zoomPanel.add(continuousFitCheckBox);
         zoomPanel.add(clearGraphButton);
         
         centerPanel.add(zoomPanel, BorderLayout.SOUTH);
         mainPanel.add(centerPanel, BorderLayout.CENTER);
         
-        // South panel - results and functions
-        JPanel southPanel = new JPanel(new BorderLayout(5, 5));
-        
+        // South panel - results and functions, filled in by setupSecondaryUI
+        southPanel = new JPanel(new BorderLayout(5, 5));
+        mainPanel.add(southPanel, BorderLayout.SOUTH);
+
+        // Add the main panel to the frame
+        add(mainPanel);
+
+        if (!FAST_STARTUP) {
+            setupSecondaryUI();
+        }
+    }
+
+    private void setupSecondaryUI() {
+        secondaryUIBuilt = true;
+
         // Results area
         resultArea = new JTextArea(5, 40);
         resultArea.setFont(new Font("Monospaced", Font.PLAIN, 14));
@@ -160,20 +326,102 @@ public class CalculatorMain extends JFrame {
         functionPanel.add(functionComboBox, BorderLayout.SOUTH);
         
         southPanel.add(functionPanel, BorderLayout.SOUTH);
-        mainPanel.add(southPanel, BorderLayout.SOUTH);
+        updateFunctionComboBox();
         
-        // Help menu
         JMenuBar menuBar = new JMenuBar();
-                // Complete the Help menu setup
+        
+        // Tools menu
+        JMenu toolsMenu = new JMenu("Tools");
+        JMenuItem valueTableItem = new JMenuItem("Value Table...");
+        valueTableItem.addActionListener(e -> showValueTable());
+        toolsMenu.add(valueTableItem);
+        menuBar.add(toolsMenu);
+        
+        // Help menu
         JMenu helpMenu = new JMenu("Help");
         JMenuItem aboutItem = new JMenuItem("About");
         aboutItem.addActionListener(e -> showAboutDialog());
         helpMenu.add(aboutItem);
         menuBar.add(helpMenu);
         setJMenuBar(menuBar);
+    }
 
-        // Add the main panel to the frame
-        add(mainPanel);
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+
+        // The frame is on screen now, so start the work that fast startup deferred
+        if (!startupHandled) {
+            startupHandled = true;
+            if (REPORT_STARTUP) {
+                System.out.println("first-paint-ms=" + millisSinceLaunch());
+            }
+            if (FAST_STARTUP || EXIT_AFTER_STARTUP) {
+                SwingUtilities.invokeLater(this::finishStartup);
+            }
+        }
+    }
+
+    private void finishStartup() {
+        if (!secondaryUIBuilt) {
+            Dimension packedSize = getSize();
+            setupSecondaryUI();
+
+            // Grow to fit the new panels unless the user already resized the window
+            if (getSize().equals(packedSize)) {
+                pack();
+            } else {
+                revalidate();
+            }
+        }
+        if (FAST_STARTUP) {
+            warmUpThread = startEvaluatorWarmUp();
+        }
+
+        if (EXIT_AFTER_STARTUP) {
+            try {
+                if (warmUpThread != null) {
+                    warmUpThread.join();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (REPORT_STARTUP) {
+                System.out.println("startup-complete-ms=" + millisSinceLaunch());
+            }
+            System.exit(0);
+        }
+    }
+
+    // Compiles and evaluates typical expressions on a private calculator, so the parser and
+    // evaluator are loaded and JIT-compiled before the user first presses a button
+    private static Thread startEvaluatorWarmUp() {
+        Thread thread = new Thread(() -> {
+            AdvancedCalculator warmCalculator = new AdvancedCalculator();
+            for (int round = 0; round < 200; round++) {
+                for (String expression : WARM_UP_EXPRESSIONS) {
+                    try {
+                        CompiledExpression compiled = warmCalculator.compile(expression);
+                        for (int i = 0; i < 50; i++) {
+                            compiled.evaluate(i * 0.1 - 2.5);
+                        }
+                        warmCalculator.evaluate(expression, round * 0.01 + 0.5);
+                    } catch (AdvancedCalculator.CalculatorException ex) {
+                        // Domain errors are expected for some sample points
+                    }
+                }
+            }
+        }, "evaluator-warm-up");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return thread;
+    }
+
+    private static long millisSinceLaunch() {
+        return ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis())
+                .orElse(-1L);
     }
 
     private void showAboutDialog() {
@@ -191,25 +439,81 @@ public class CalculatorMain extends JFrame {
                 - Pan: Click & drag
                 - Zoom: Mouse wheel or +/- buttons
                 - Save functions with unique names
+                - Tools > Value Table lists values over a range and exports CSV
 
                 Note: Use 'x' as the variable in functions
                 """;
         JOptionPane.showMessageDialog(this, aboutMessage, "About", JOptionPane.INFORMATION_MESSAGE);
     }
 
-    private void calculate() throws AdvancedCalculator.CalculatorException {
-        try {
-            String expression = expressionField.getText();
-            double result = calculator.evaluate(expression);
-            resultArea.append(expression + " = " + result + "\n");
-        } catch (IllegalArgumentException ex) {
-            JOptionPane.showMessageDialog(this, "Invalid input: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        } catch (ArithmeticException ex) {
-            JOptionPane.showMessageDialog(this, "Math error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        } catch (AdvancedCalculator.CalculatorException ex) {
-            JOptionPane.showMessageDialog(this, "Calculation error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        } catch (RuntimeException ex) {
-            JOptionPane.showMessageDialog(this, "Unexpected error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    // Evaluates off the EDT under an EvaluationBudget so runaway expressions can't freeze the window
+    private void calculate() {
+        if (runningBudget != null) {
+            return;
+        }
+        
+        String expression = expressionField.getText();
+        EvaluationBudget budget = new EvaluationBudget();
+        runningBudget = budget;
+        setCalculating(true);
+        
+        new SwingWorker<Double, Void>() {
+            @Override
+            protected Double doInBackground() throws AdvancedCalculator.CalculatorException {
+                return calculator.evaluate(expression, 0, budget);
+            }
+            
+            @Override
+            protected void done() {
+                runningBudget = null;
+                setCalculating(false);
+                try {
+                    double result = get();
+                    appendResult(expression + " = " + result);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    showCalculationError(expression, ex.getCause(), budget);
+                }
+            }
+        }.execute();
+    }
+    
+    private void appendResult(String line) {
+        String text = line + "\n";
+        resultArea.append(text);
+        historyLineLengths.addLast(text.length());
+        if (historyLineLengths.size() > MAX_HISTORY_LINES) {
+            resultArea.replaceRange("", 0, historyLineLengths.removeFirst());
+        }
+    }
+    
+    private void cancelCalculation() {
+        if (runningBudget != null) {
+            runningBudget.cancel();
+            cancelButton.setEnabled(false);
+        }
+    }
+    
+    private void setCalculating(boolean calculating) {
+        calculateButton.setEnabled(!calculating);
+        cancelButton.setEnabled(calculating);
+        progressBar.setVisible(calculating);
+    }
+    
+    private void showCalculationError(String expression, Throwable cause, EvaluationBudget budget) {
+        if (budget.isCancelled()) {
+            appendResult(expression + " = (cancelled)");
+        } else if (cause instanceof IllegalArgumentException) {
+            JOptionPane.showMessageDialog(this, "Invalid input: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        } else if (cause instanceof ArithmeticException) {
+            JOptionPane.showMessageDialog(this, "Math error: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        } else if (cause instanceof AdvancedCalculator.CalculatorException) {
+            JOptionPane.showMessageDialog(this, "Calculation error: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        } else if (cause instanceof StackOverflowError) {
+            JOptionPane.showMessageDialog(this, "Calculation error: expression nested too deeply", "Error", JOptionPane.ERROR_MESSAGE);
+        } else {
+            JOptionPane.showMessageDialog(this, "Unexpected error: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
@@ -220,6 +524,7 @@ public class CalculatorMain extends JFrame {
             
             if (!funcName.isEmpty()) {
                 calculator.saveFunction(funcName, expression);
+                persistFunction(funcName, expression);
                 updateFunctionComboBox();
             }
             
@@ -227,6 +532,15 @@ public class CalculatorMain extends JFrame {
             Color color = getNextColor();
             graphPanel.addFunction(function, color);
             functionColors.put(expression, color);
+            if (sessionStore != null) {
+                sessionStore.addCurve(expression, color);
+            }
+            
+            // The real curve replaces the preview until the expression is edited again
+            previewTimer.stop();
+            cancelPreviewCompile();
+            previewedText = expression.replaceAll("\\s+", "");
+            graphPanel.setPreviewFunction(null);
             graphPanel.repaint();
         } catch (IllegalArgumentException | ArithmeticException ex) {
             JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -235,6 +549,155 @@ public class CalculatorMain extends JFrame {
         }
     }
 
+    private void startPreviewCompile() {
+        String text = expressionField.getText();
+        
+        // Edits that only change whitespace keep the current preview
+        String normalized = text.replaceAll("\\s+", "");
+        if (normalized.equals(previewedText)) {
+            return;
+        }
+        previewedText = normalized;
+        cancelPreviewCompile();
+        
+        if (normalized.isEmpty()) {
+            graphPanel.setPreviewFunction(null);
+            return;
+        }
+        
+        EvaluationBudget budget = new EvaluationBudget();
+        previewBudget = budget;
+        previewTask = previewCompiler.submit(() -> {
+            Function<Double, Double> function;
+            try {
+                function = calculator.compileFunction(text, budget);
+            } catch (AdvancedCalculator.CalculatorException ex) {
+                // Incomplete input while typing, or cancelled by a newer keystroke
+                function = null;
+            }
+            Function<Double, Double> preview = function;
+            SwingUtilities.invokeLater(() -> {
+                if (previewBudget == budget) {
+                    previewBudget = null;
+                    previewTask = null;
+                    graphPanel.setPreviewFunction(preview);
+                }
+            });
+        });
+    }
+    
+    private void cancelPreviewCompile() {
+        if (previewBudget != null) {
+            previewBudget.cancel();
+            previewTask.cancel(false);
+            previewBudget = null;
+            previewTask = null;
+        }
+    }
+
+    // Table of the current expression and the plotted curves over an x range
+    private void showValueTable() {
+        List<String> sources = new ArrayList<>(functionColors.keySet());
+        String current = expressionField.getText().trim();
+        if (!current.isEmpty() && !sources.contains(current)) {
+            sources.add(0, current);
+        }
+        if (sources.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Enter or graph a function first", "Value Table", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        double xMin = graphPanel.getXMin();
+        double xMax = graphPanel.getXMax();
+        JTextField startField = new JTextField(Double.toString(xMin));
+        JTextField endField = new JTextField(Double.toString(xMax));
+        JTextField stepField = new JTextField(Double.toString((xMax - xMin) / 1000));
+        JPanel rangePanel = new JPanel(new GridLayout(3, 2, 5, 5));
+        rangePanel.add(new JLabel("From x:"));
+        rangePanel.add(startField);
+        rangePanel.add(new JLabel("To x:"));
+        rangePanel.add(endField);
+        rangePanel.add(new JLabel("Step:"));
+        rangePanel.add(stepField);
+        if (JOptionPane.showConfirmDialog(this, rangePanel, "Value Table",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        
+        ValueTableModel model;
+        try {
+            double start = Double.parseDouble(startField.getText().trim());
+            double end = Double.parseDouble(endField.getText().trim());
+            double step = Double.parseDouble(stepField.getText().trim());
+            // The small slack keeps the end point when the range is a multiple of the step
+            double rows = Math.floor((end - start) / step + 1e-9) + 1;
+            if (!(step > 0) || !(end >= start) || !(rows <= MAX_TABLE_ROWS)) {
+                throw new IllegalArgumentException("step must be positive, the range not reversed, and at most "
+                        + MAX_TABLE_ROWS + " rows");
+            }
+            
+            List<CompiledExpression> columns = new ArrayList<>();
+            for (String source : sources) {
+                columns.add(calculator.compile(source));
+            }
+            model = new ValueTableModel(columns, start, step, (int) rows);
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(this, "Invalid input: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        } catch (AdvancedCalculator.CalculatorException ex) {
+            JOptionPane.showMessageDialog(this, "Calculation error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        JDialog dialog = new JDialog(this, "Value Table", false);
+        JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        
+        JButton exportButton = new JButton("Export CSV...");
+        exportButton.addActionListener(e -> exportCsv(dialog, model));
+        JPanel exportPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 5));
+        exportPanel.add(new JLabel(model.getRowCount() + " rows"));
+        exportPanel.add(exportButton);
+        
+        dialog.add(new JScrollPane(table), BorderLayout.CENTER);
+        dialog.add(exportPanel, BorderLayout.SOUTH);
+        dialog.setSize(600, 400);
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+    
+    // Streams rows straight to the file in the background; the table is never held in memory
+    private void exportCsv(Component parent, ValueTableModel model) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("values.csv"));
+        if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path path = chooser.getSelectedFile().toPath();
+        
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                try (Writer out = Files.newBufferedWriter(path)) {
+                    model.writeCsv(out);
+                }
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(parent, "Exported " + model.getRowCount() + " rows to " + path);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    JOptionPane.showMessageDialog(parent, "Export failed: " + ex.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
     private void saveFunction() {
         String name = functionNameField.getText().trim();
         String expression = expressionField.getText().trim();
@@ -246,6 +709,7 @@ public class CalculatorMain extends JFrame {
         
         try {
             calculator.saveFunction(name, expression);
+            persistFunction(name, expression);
             updateFunctionComboBox();
             functionNameField.setText("");
             JOptionPane.showMessageDialog(this, "Function saved successfully!");
@@ -258,14 +722,21 @@ public class CalculatorMain extends JFrame {
         }
     }
 
-    private void updateFunctionComboBox() {
-        functionComboBox.removeAllItems();
-        functionComboBox.addItem("--- Saved Functions ---");
-        for (String name : calculator.getSavedFunctionNames()) {
-            functionComboBox.addItem(name);
+    // Queued to the session writer thread, never blocks the EDT
+    private void persistFunction(String name, String expression) {
+        if (sessionStore != null) {
+            sessionStore.saveFunction(name, expression);
         }
     }
 
+    private void updateFunctionComboBox() {
+        // Build the model in one go, restored sessions can hold thousands of functions
+        List<String> items = new ArrayList<>();
+        items.add("--- Saved Functions ---");
+        items.addAll(new TreeSet<>(calculator.getSavedFunctionNames()));
+        functionComboBox.setModel(new DefaultComboBoxModel<>(items.toArray(new String[0])));
+    }
+
     private Color getNextColor() {
         Color color = availableColors[nextColorIndex];
         nextColorIndex = (nextColorIndex + 1) % availableColors.length;
@@ -274,12 +745,15 @@ public class CalculatorMain extends JFrame {
 
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
-            try {
-                UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-            } catch (UnsupportedLookAndFeelException | ClassNotFoundException | InstantiationException | IllegalAccessException ex) {
-                Logger.getLogger(CalculatorMain.class.getName()).log(Level.SEVERE, null, ex); // Fixed Logger and Level
+            // The system look-and-feel is one of the slowest things to load, fast startup keeps the default
+            if (!FAST_STARTUP) {
+                try {
+                    UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+                } catch (UnsupportedLookAndFeelException | ClassNotFoundException | InstantiationException | IllegalAccessException ex) {
+                    Logger.getLogger(CalculatorMain.class.getName()).log(Level.SEVERE, null, ex); // Fixed Logger and Level
+                }
             }
-            
+
             new CalculatorMain().setVisible(true);
         });
     }
@@ -0,0 +1,261 @@
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+// An expression parsed once by AdvancedCalculator.compile and evaluated many times.
+// Evaluation follows IEEE semantics: division by zero gives Infinity, log/ln/sqrt outside
+// their domain give NaN or -Infinity, and nothing on the evaluation path throws.
+// Functions are resolved through FunctionRegistry when compiling, so nodes call them directly.
+public final class CompiledExpression {
+    private final String source;
+    private final Node root;
+
+    CompiledExpression(String source, Node root) {
+        this.source = source;
+        this.root = root;
+    }
+
+    public double evaluate(double x) {
+        return root.eval(x);
+    }
+
+    // Slower variant that records which sub-expression first produced NaN or Infinity
+    // from finite inputs. Use it to explain a bad value, not inside sampling loops.
+    public double evaluate(double x, Diagnostics diagnostics) {
+        return root.trace(x, diagnostics);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+
+    public static final class Diagnostics {
+        private String firstInvalidExpression;
+        private double firstInvalidValue;
+
+        public boolean hasInvalid() {
+            return firstInvalidExpression != null;
+        }
+
+        public String getFirstInvalidExpression() {
+            return firstInvalidExpression;
+        }
+
+        public double getFirstInvalidValue() {
+            return firstInvalidValue;
+        }
+
+        public void reset() {
+            firstInvalidExpression = null;
+            firstInvalidValue = 0;
+        }
+
+        private void record(Node node, double value, double... inputs) {
+            if (firstInvalidExpression != null || Double.isFinite(value)) {
+                return;
+            }
+            // Only report where the bad value originates, not every node it flows through
+            for (double input : inputs) {
+                if (!Double.isFinite(input)) {
+                    return;
+                }
+            }
+            firstInvalidExpression = node.toString();
+            firstInvalidValue = value;
+        }
+    }
+
+    abstract static class Node {
+        abstract double eval(double x);
+
+        abstract double trace(double x, Diagnostics diagnostics);
+    }
+
+    static final class Constant extends Node {
+        final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        double eval(double x) {
+            return value;
+        }
+
+        @Override
+        double trace(double x, Diagnostics diagnostics) {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return Double.toString(value);
+        }
+    }
+
+    static final class Variable extends Node {
+        static final Variable INSTANCE = new Variable();
+
+        private Variable() {}
+
+        @Override
+        double eval(double x) {
+            return x;
+        }
+
+        @Override
+        double trace(double x, Diagnostics diagnostics) {
+            return x;
+        }
+
+        @Override
+        public String toString() {
+            return "x";
+        }
+    }
+
+    static final class Unary extends Node {
+        final String name;
+        final DoubleUnaryOperator function;
+        final Node operand;
+
+        Unary(String name, DoubleUnaryOperator function, Node operand) {
+            this.name = name;
+            this.function = function;
+            this.operand = operand;
+        }
+
+        @Override
+        double eval(double x) {
+            return function.applyAsDouble(operand.eval(x));
+        }
+
+        @Override
+        double trace(double x, Diagnostics diagnostics) {
+            double a = operand.trace(x, diagnostics);
+            double result = function.applyAsDouble(a);
+            diagnostics.record(this, result, a);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return name.equals(AdvancedCalculator.NEGATE) ? "-(" + operand + ")" : name + "(" + operand + ")";
+        }
+    }
+
+    static final class Binary extends Node {
+        final char operator;
+        final Node left;
+        final Node right;
+
+        Binary(char operator, Node left, Node right) {
+            if ("+-*/^".indexOf(operator) < 0) {
+                throw new IllegalArgumentException("Unknown operator: " + operator);
+            }
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        private double apply(double a, double b) {
+            return switch (operator) {
+                case '+' -> a + b;
+                case '-' -> a - b;
+                case '*' -> a * b;
+                case '/' -> a / b;
+                default -> Math.pow(a, b);
+            };
+        }
+
+        @Override
+        double eval(double x) {
+            return apply(left.eval(x), right.eval(x));
+        }
+
+        @Override
+        double trace(double x, Diagnostics diagnostics) {
+            double a = left.trace(x, diagnostics);
+            double b = right.trace(x, diagnostics);
+            double result = apply(a, b);
+            diagnostics.record(this, result, a, b);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " " + operator + " " + right + ")";
+        }
+    }
+
+    // Two-argument registered function, written name(a, b)
+    static final class BinaryFunction extends Node {
+        final String name;
+        final DoubleBinaryOperator function;
+        final Node left;
+        final Node right;
+
+        BinaryFunction(String name, DoubleBinaryOperator function, Node left, Node right) {
+            this.name = name;
+            this.function = function;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double eval(double x) {
+            return function.applyAsDouble(left.eval(x), right.eval(x));
+        }
+
+        @Override
+        double trace(double x, Diagnostics diagnostics) {
+            double a = left.trace(x, diagnostics);
+            double b = right.trace(x, diagnostics);
+            double result = function.applyAsDouble(a, b);
+            diagnostics.record(this, result, a, b);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + left + ", " + right + ")";
+        }
+    }
+
+    // Call of a saved function: the body is evaluated with x bound to the argument's value
+    static final class Call extends Node {
+        final String name;
+        final Node body;
+        final Node argument;
+
+        Call(String name, Node body, Node argument) {
+            this.name = name;
+            this.body = body;
+            this.argument = argument;
+        }
+
+        @Override
+        double eval(double x) {
+            return body.eval(argument.eval(x));
+        }
+
+        @Override
+        double trace(double x, Diagnostics diagnostics) {
+            return body.trace(argument.trace(x, diagnostics), diagnostics);
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + argument + ")";
+        }
+    }
+}
@@ -0,0 +1,63 @@
+// Limits how much work a single AdvancedCalculator.evaluate call may do. Self-referencing
+// or deeply chained saved functions are expanded textually, so without a limit they can
+// run for a very long time or overflow the stack.
+//
+// Defaults can be changed with the system properties calculator.maxSteps,
+// calculator.timeoutMillis and calculator.maxDepth.
+public final class EvaluationBudget {
+    private static final long DEFAULT_MAX_STEPS = Long.getLong("calculator.maxSteps", 1_000_000);
+    private static final long DEFAULT_TIMEOUT_MILLIS = Long.getLong("calculator.timeoutMillis", 5_000);
+    private static final int DEFAULT_MAX_DEPTH = Integer.getInteger("calculator.maxDepth", 100);
+
+    private final long maxSteps;
+    private final long deadline;
+    private final int maxDepth;
+
+    private volatile boolean cancelled = false;
+    private long steps = 0;
+    private int depth = 0;
+
+    public EvaluationBudget() {
+        this(DEFAULT_MAX_STEPS, DEFAULT_TIMEOUT_MILLIS, DEFAULT_MAX_DEPTH);
+    }
+
+    public EvaluationBudget(long maxSteps, long timeoutMillis, int maxDepth) {
+        this.maxSteps = maxSteps;
+        this.deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        this.maxDepth = maxDepth;
+    }
+
+    // Safe to call from any thread; the evaluating thread notices at its next step
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void charge(long work) throws AdvancedCalculator.CalculatorException {
+        if (cancelled) {
+            throw new AdvancedCalculator.CalculatorException("Evaluation cancelled");
+        }
+        steps += work;
+        if (steps > maxSteps) {
+            throw new AdvancedCalculator.CalculatorException(
+                    "Evaluation exceeded " + maxSteps + " steps (recursive or deeply chained saved function?)");
+        }
+        if (System.nanoTime() > deadline) {
+            throw new AdvancedCalculator.CalculatorException("Evaluation timed out");
+        }
+    }
+
+    void enter() throws AdvancedCalculator.CalculatorException {
+        if (++depth > maxDepth) {
+            throw new AdvancedCalculator.CalculatorException(
+                    "Saved functions nested deeper than " + maxDepth + " levels (recursive definition?)");
+        }
+    }
+
+    void exit() {
+        depth--;
+    }
+}
@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Evaluates all curves of a frame together so work they have in common is done once.
+//
+// Curves created by AdvancedCalculator.createFunction are merged into one graph in which
+// structurally equal sub-expressions (including saved-function calls such as f(x)) are a
+// single node. Every non-trivial node used more than once becomes a slot: it is evaluated
+// once per x column into a scratch array, and every curve reads the slot instead of
+// re-evaluating it. Other functions are sampled one by one as before.
+//
+// The plan is rebuilt only when the set of curves or their compiled trees change.
+final class FramePlanner {
+    private List<CompiledExpression> plannedFor = new ArrayList<>();
+    private CompiledExpression.Node[] slotNodes = new CompiledExpression.Node[0];
+    private CompiledExpression.Node[] curveNodes = new CompiledExpression.Node[0];
+    private double[][] slotValues = new double[0][];
+    private final Column column = new Column();
+
+    // Fills ys[i][0..n) with functions.get(i) sampled at xs[0..n)
+    void evaluate(List<Function<Double, Double>> functions, double[] xs, int n, double[][] ys) {
+        List<CompiledExpression> compiled = new ArrayList<>(functions.size());
+        for (Function<Double, Double> function : functions) {
+            compiled.add(function instanceof AdvancedCalculator.CompiledFunction compiledFunction
+                    ? compiledFunction.current() : null);
+        }
+        if (!sameExpressions(compiled, plannedFor)) {
+            plan(compiled);
+        }
+
+        // Shared nodes first; slots are ordered so a slot only reads slots before it
+        for (int k = 0; k < slotNodes.length; k++) {
+            if (slotValues[k].length < n) {
+                slotValues[k] = new double[n];
+            }
+            CompiledExpression.Node node = slotNodes[k];
+            double[] values = slotValues[k];
+            for (int j = 0; j < n; j++) {
+                column.index = j;
+                values[j] = node.eval(xs[j]);
+            }
+        }
+
+        for (int i = 0; i < functions.size(); i++) {
+            double[] out = ys[i];
+            CompiledExpression.Node node = curveNodes[i];
+            if (node != null) {
+                for (int j = 0; j < n; j++) {
+                    column.index = j;
+                    out[j] = node.eval(xs[j]);
+                }
+            } else {
+                Function<Double, Double> function = functions.get(i);
+                for (int j = 0; j < n; j++) {
+                    try {
+                        out[j] = function.apply(xs[j]);
+                    } catch (Exception e) {
+                        out[j] = Double.NaN;
+                    }
+                }
+            }
+        }
+    }
+
+    // Number of shared nodes in the current plan
+    int getSharedCount() {
+        return slotNodes.length;
+    }
+
+    private static boolean sameExpressions(List<CompiledExpression> a, List<CompiledExpression> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void plan(List<CompiledExpression> compiled) {
+        Interner interner = new Interner();
+        List<CompiledExpression.Node> roots = new ArrayList<>();
+        for (CompiledExpression expression : compiled) {
+            roots.add(expression == null ? null : interner.intern(expression.getRoot(), false));
+        }
+
+        // Count uses: one per distinct parent edge in the merged graph, plus one per curve root
+        Map<CompiledExpression.Node, Integer> uses = new IdentityHashMap<>();
+        List<CompiledExpression.Node> postOrder = new ArrayList<>();
+        Map<CompiledExpression.Node, Boolean> visited = new IdentityHashMap<>();
+        for (CompiledExpression.Node root : roots) {
+            if (root != null) {
+                uses.merge(root, 1, Integer::sum);
+                countUses(root, uses, visited, postOrder);
+            }
+        }
+
+        // Post-order puts children before parents, which is the order slots must be filled in
+        Map<CompiledExpression.Node, Integer> slotIndex = new IdentityHashMap<>();
+        for (CompiledExpression.Node node : postOrder) {
+            if (uses.getOrDefault(node, 0) > 1 && !isTrivial(node)) {
+                slotIndex.put(node, slotIndex.size());
+            }
+        }
+
+        Map<CompiledExpression.Node, CompiledExpression.Node> rewritten = new IdentityHashMap<>();
+        slotValues = new double[slotIndex.size()][0];
+        slotNodes = new CompiledExpression.Node[slotIndex.size()];
+        for (Map.Entry<CompiledExpression.Node, Integer> entry : slotIndex.entrySet()) {
+            slotNodes[entry.getValue()] = rewriteChildren(entry.getKey(), slotIndex, rewritten);
+        }
+        curveNodes = new CompiledExpression.Node[roots.size()];
+        for (int i = 0; i < roots.size(); i++) {
+            CompiledExpression.Node root = roots.get(i);
+            curveNodes[i] = root == null ? null : rewrite(root, slotIndex, rewritten);
+        }
+        plannedFor = compiled;
+    }
+
+    private static void countUses(CompiledExpression.Node node, Map<CompiledExpression.Node, Integer> uses,
+                                  Map<CompiledExpression.Node, Boolean> visited, List<CompiledExpression.Node> postOrder) {
+        if (visited.put(node, Boolean.TRUE) != null) {
+            return;
+        }
+        for (CompiledExpression.Node child : outerChildren(node)) {
+            uses.merge(child, 1, Integer::sum);
+            countUses(child, uses, visited, postOrder);
+        }
+        postOrder.add(node);
+    }
+
+    // Children evaluated at the caller's x; a call's body runs at the argument's value
+    // instead, so nodes inside bodies are never turned into per-column slots
+    private static List<CompiledExpression.Node> outerChildren(CompiledExpression.Node node) {
+        if (node instanceof CompiledExpression.Unary unary) {
+            return List.of(unary.operand);
+        } else if (node instanceof CompiledExpression.Binary binary) {
+            return List.of(binary.left, binary.right);
+        } else if (node instanceof CompiledExpression.BinaryFunction function) {
+            return List.of(function.left, function.right);
+        } else if (node instanceof CompiledExpression.Call call) {
+            return List.of(call.argument);
+        }
+        return List.of();
+    }
+
+    private static boolean isTrivial(CompiledExpression.Node node) {
+        return node instanceof CompiledExpression.Constant || node instanceof CompiledExpression.Variable;
+    }
+
+    private CompiledExpression.Node rewrite(CompiledExpression.Node node, Map<CompiledExpression.Node, Integer> slotIndex,
+                                            Map<CompiledExpression.Node, CompiledExpression.Node> rewritten) {
+        Integer slot = slotIndex.get(node);
+        if (slot != null) {
+            return new SlotRead(slotValues, slot, column);
+        }
+        return rewriteChildren(node, slotIndex, rewritten);
+    }
+
+    private CompiledExpression.Node rewriteChildren(CompiledExpression.Node node, Map<CompiledExpression.Node, Integer> slotIndex,
+                                                    Map<CompiledExpression.Node, CompiledExpression.Node> rewritten) {
+        CompiledExpression.Node done = rewritten.get(node);
+        if (done != null) {
+            return done;
+        }
+        CompiledExpression.Node result;
+        if (node instanceof CompiledExpression.Unary unary) {
+            result = new CompiledExpression.Unary(unary.name, unary.function, rewrite(unary.operand, slotIndex, rewritten));
+        } else if (node instanceof CompiledExpression.Binary binary) {
+            result = new CompiledExpression.Binary(binary.operator,
+                    rewrite(binary.left, slotIndex, rewritten), rewrite(binary.right, slotIndex, rewritten));
+        } else if (node instanceof CompiledExpression.BinaryFunction function) {
+            result = new CompiledExpression.BinaryFunction(function.name, function.function,
+                    rewrite(function.left, slotIndex, rewritten), rewrite(function.right, slotIndex, rewritten));
+        } else if (node instanceof CompiledExpression.Call call) {
+            result = new CompiledExpression.Call(call.name, call.body, rewrite(call.argument, slotIndex, rewritten));
+        } else {
+            result = node;
+        }
+        rewritten.put(node, result);
+        return result;
+    }
+
+    // Hash-conses trees so structurally equal sub-expressions become the same node object.
+    // Keys hold already interned children, which compare by identity. Call bodies are
+    // interned in their own table because their x is the call's argument.
+    private static final class Interner {
+        private final Map<List<Object>, CompiledExpression.Node> outer = new HashMap<>();
+        private final Map<List<Object>, CompiledExpression.Node> bodies = new HashMap<>();
+
+        CompiledExpression.Node intern(CompiledExpression.Node node, boolean inBody) {
+            Map<List<Object>, CompiledExpression.Node> table = inBody ? bodies : outer;
+            if (node instanceof CompiledExpression.Constant constant) {
+                return table.computeIfAbsent(List.of("const", Double.doubleToLongBits(constant.value)), key -> node);
+            } else if (node instanceof CompiledExpression.Variable) {
+                return node;
+            } else if (node instanceof CompiledExpression.Unary unary) {
+                CompiledExpression.Node operand = intern(unary.operand, inBody);
+                return table.computeIfAbsent(List.of(unary.function, operand),
+                        key -> new CompiledExpression.Unary(unary.name, unary.function, operand));
+            } else if (node instanceof CompiledExpression.Binary binary) {
+                CompiledExpression.Node left = intern(binary.left, inBody);
+                CompiledExpression.Node right = intern(binary.right, inBody);
+                return table.computeIfAbsent(List.of(binary.operator, left, right),
+                        key -> new CompiledExpression.Binary(binary.operator, left, right));
+            } else if (node instanceof CompiledExpression.BinaryFunction function) {
+                CompiledExpression.Node left = intern(function.left, inBody);
+                CompiledExpression.Node right = intern(function.right, inBody);
+                return table.computeIfAbsent(List.of(function.function, left, right),
+                        key -> new CompiledExpression.BinaryFunction(function.name, function.function, left, right));
+            } else if (node instanceof CompiledExpression.Call call) {
+                CompiledExpression.Node body = intern(call.body, true);
+                CompiledExpression.Node argument = intern(call.argument, inBody);
+                return table.computeIfAbsent(List.of("call", call.name, body, argument),
+                        key -> new CompiledExpression.Call(call.name, body, argument));
+            }
+            return node;
+        }
+    }
+
+    // Which x column the slots are being read for
+    private static final class Column {
+        int index;
+    }
+
+    // Reads a shared node's value for the current column instead of evaluating it again
+    private static final class SlotRead extends CompiledExpression.Node {
+        private final double[][] slotValues;
+        private final int slot;
+        private final Column column;
+
+        SlotRead(double[][] slotValues, int slot, Column column) {
+            this.slotValues = slotValues;
+            this.slot = slot;
+            this.column = column;
+        }
+
+        @Override
+        double eval(double x) {
+            return slotValues[slot][column.index];
+        }
+
+        @Override
+        double trace(double x, CompiledExpression.Diagnostics diagnostics) {
+            return eval(x);
+        }
+
+        @Override
+        public String toString() {
+            return "$" + slot;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+// Adds named functions to the calculator without changing the parser.
+//
+// Implementations are discovered with java.util.ServiceLoader: put the class on the classpath
+// and list its fully qualified name in META-INF/services/FunctionProvider. Providers are
+// loaded once, the first time a calculator is created.
+public interface FunctionProvider {
+    void registerFunctions(FunctionRegistry registry);
+}
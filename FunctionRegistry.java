@@ -0,0 +1,99 @@
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Named functions the calculator understands, such as sin(x) or a provider's atan(y, x).
+//
+// Expressions look names up here while they are parsed. Compiled expressions keep a direct
+// reference to the kernel, so a registered function costs the same as a built-in when graphs
+// are sampled. Kernels should follow the compiled-evaluation rule of returning NaN or
+// Infinity instead of throwing. Names are letters only and cannot be replaced once registered.
+public final class FunctionRegistry {
+    private static final Logger LOGGER = Logger.getLogger(FunctionRegistry.class.getName());
+
+    // Concurrent so functions can be registered while expressions compile off the EDT
+    private final Map<String, Kernel> kernels = new ConcurrentHashMap<>();
+
+    // A registered function; exactly one of unary and binary is set
+    record Kernel(String name, DoubleUnaryOperator unary, DoubleBinaryOperator binary) {
+        int arity() {
+            return unary != null ? 1 : 2;
+        }
+    }
+
+    private static final class DefaultHolder {
+        static final FunctionRegistry INSTANCE = loadDefault();
+    }
+
+    // An empty registry; see withBuiltIns and getDefault
+    public FunctionRegistry() {}
+
+    // The built-in functions plus everything contributed by FunctionProvider services.
+    // Shared by every calculator created with the no-argument constructor.
+    public static FunctionRegistry getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    public static FunctionRegistry withBuiltIns() {
+        FunctionRegistry registry = new FunctionRegistry();
+        registry.registerUnary("sin", Math::sin);
+        registry.registerUnary("cos", Math::cos);
+        registry.registerUnary("tan", Math::tan);
+        registry.registerUnary("log", Math::log10);
+        registry.registerUnary("ln", Math::log);
+        registry.registerUnary("sqrt", Math::sqrt);
+        registry.registerUnary("abs", Math::abs);
+        return registry;
+    }
+
+    public void registerUnary(String name, DoubleUnaryOperator function) {
+        register(new Kernel(name, function, null));
+    }
+
+    // Called as name(a, b)
+    public void registerBinary(String name, DoubleBinaryOperator function) {
+        register(new Kernel(name, null, function));
+    }
+
+    public boolean contains(String name) {
+        return kernels.containsKey(name);
+    }
+
+    Kernel get(String name) {
+        return kernels.get(name);
+    }
+
+    private void register(Kernel kernel) {
+        String name = kernel.name();
+        if (name == null || !name.matches("[A-Za-z]+") || name.equals("x")) {
+            throw new IllegalArgumentException("Invalid function name: " + name);
+        }
+        if (kernel.unary() == null && kernel.binary() == null) {
+            throw new IllegalArgumentException("No implementation given for function: " + name);
+        }
+        if (kernels.putIfAbsent(name, kernel) != null) {
+            throw new IllegalArgumentException("Function already registered: " + name);
+        }
+    }
+
+    private static FunctionRegistry loadDefault() {
+        FunctionRegistry registry = withBuiltIns();
+        try {
+            for (FunctionProvider provider : ServiceLoader.load(FunctionProvider.class)) {
+                try {
+                    provider.registerFunctions(registry);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Function provider failed: " + provider.getClass().getName(), e);
+                }
+            }
+        } catch (ServiceConfigurationError e) {
+            LOGGER.log(Level.WARNING, "Could not load function providers", e);
+        }
+        return registry;
+    }
+}
@@ -0,0 +1,137 @@
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Headless frame-time benchmark for {@link GraphingCalculator}.
+ *
+ * Usage: java -Djava.awt.headless=true GraphBenchmark [width] [height] [frames]
+ *
+ * "before" replays the original one-drawLine-per-sample-pair loop on top of an
+ * empty frame, "after" paints the panel with its simplified polylines.
+ * "hover" repaints the strip around the crosshair, reusing the frame's samples.
+ */
+public class GraphBenchmark {
+    private static final int WARMUP_FRAMES = 20;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1920;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 1080;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        List<Function<Double, Double>> curves = new ArrayList<>();
+        curves.add(x -> 5 * Math.sin(x));
+        curves.add(x -> x * x / 10);
+        curves.add(x -> Math.tan(x));
+        curves.add(x -> 8 * Math.sin(50 * x));
+        curves.add(x -> 0.5 * x + 1);
+        curves.add(x -> Math.sqrt(x));
+        curves.add(x -> Math.abs(x) - 5);
+        curves.add(x -> Math.cos(x) * x / 2);
+
+        GraphingCalculator empty = new GraphingCalculator();
+        empty.setSize(width, height);
+
+        GraphingCalculator panel = new GraphingCalculator();
+        panel.setSize(width, height);
+        for (Function<Double, Double> curve : curves) {
+            panel.addFunction(curve, Color.BLUE);
+        }
+
+        GraphingCalculator hovered = new GraphingCalculator();
+        hovered.setSize(width, height);
+        for (Function<Double, Double> curve : curves) {
+            hovered.addFunction(curve, Color.BLUE);
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        // Hover looks the pointer's column up in samples from a painted frame; the pointer sits near y = 5*sin(x)
+        render(image, g2 -> hovered.paint(g2));
+        hovered.dispatchEvent(new MouseEvent(hovered, MouseEvent.MOUSE_MOVED, System.currentTimeMillis(), 0,
+                width / 2, height / 2, 0, false));
+
+        // Interleave the modes and keep the best round of each to damp JIT and GC noise
+        double emptyMs = Double.MAX_VALUE;
+        double legacyMs = Double.MAX_VALUE;
+        double batchedMs = Double.MAX_VALUE;
+        double hoverMs = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            emptyMs = Math.min(emptyMs, timeFrames(image, frames, g2 -> empty.paint(g2)));
+            legacyMs = Math.min(legacyMs, timeFrames(image, frames, g2 -> {
+                empty.paint(g2);
+                drawPerSegment(g2, curves, width, height);
+            }));
+            batchedMs = Math.min(batchedMs, timeFrames(image, frames, g2 -> {
+                panel.invalidateSamples();
+                panel.paint(g2);
+            }));
+            // Moving the pointer repaints only the crosshair's old and new areas, roughly this strip
+            hoverMs = Math.min(hoverMs, timeFrames(image, frames, g2 -> {
+                g2.clipRect(width / 2 - 200, 0, 400, height);
+                hovered.paint(g2);
+            }));
+        }
+
+        System.out.printf("%dx%d, %d curves, %d frames%n", width, height, curves.size(), frames);
+        System.out.printf("empty frame:          %8.3f ms%n", emptyMs);
+        System.out.printf("before (per segment): %8.3f ms/frame%n", legacyMs);
+        System.out.printf("after (simplified):   %8.3f ms/frame%n", batchedMs);
+        System.out.printf("hover (cached):       %8.3f ms/frame%n", hoverMs);
+    }
+
+    private static double timeFrames(BufferedImage image, int frames, java.util.function.Consumer<Graphics2D> frame) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            render(image, frame);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            render(image, frame);
+        }
+        return (System.nanoTime() - start) / 1e6 / frames;
+    }
+
+    private static void render(BufferedImage image, java.util.function.Consumer<Graphics2D> frame) {
+        Graphics2D g2 = image.createGraphics();
+        try {
+            frame.accept(g2);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    // The drawing loop GraphingCalculator used before curves were simplified
+    private static void drawPerSegment(Graphics2D g2, List<Function<Double, Double>> curves, int width, int height) {
+        double xMin = -10, xMax = 10, yMin = -10, yMax = 10;
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setStroke(new BasicStroke(2));
+        g2.setColor(Color.BLUE);
+
+        int numPoints = width;
+        double dx = (xMax - xMin) / numPoints;
+        int[] xPoints = new int[numPoints];
+        int[] yPoints = new int[numPoints];
+        boolean[] valid = new boolean[numPoints];
+
+        for (Function<Double, Double> curve : curves) {
+            for (int j = 0; j < numPoints; j++) {
+                double x = xMin + j * dx;
+                double y = curve.apply(x);
+                valid[j] = !Double.isNaN(y) && !Double.isInfinite(y) && y >= yMin && y <= yMax;
+                if (valid[j]) {
+                    xPoints[j] = (int) ((x - xMin) / (xMax - xMin) * width);
+                    yPoints[j] = (int) ((yMax - y) / (yMax - yMin) * height);
+                }
+            }
+            for (int j = 0; j < numPoints - 1; j++) {
+                if (valid[j] && valid[j + 1]) {
+                    g2.drawLine(xPoints[j], yPoints[j], xPoints[j + 1], yPoints[j + 1]);
+                }
+            }
+        }
+    }
+}
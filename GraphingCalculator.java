@@ -5,12 +5,16 @@ import java.awt.event.MouseMotionAdapter;
 import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
 import java.util.List;
 import java.util.function.Function;
 import javax.swing.*;
 
 public class GraphingCalculator extends JPanel {
     private static final int TICK_SIZE = 5;
+    // Maximum deviation (in device pixels) allowed when merging nearly collinear points
+    private static final double SIMPLIFY_TOLERANCE = 0.25;
     
     private double xMin = -10;
     private double xMax = 10;
@@ -23,6 +27,52 @@ public class GraphingCalculator extends JPanel {
     private final List<Function<Double, Double>> functions = new ArrayList<>();
     private final List<Color> functionColors = new ArrayList<>();
     
+    // Live preview of the expression being typed; a single slot that is replaced, never added to.
+    // Its colour is opaque because curves are drawn segment by segment and translucent joints would darken.
+    private static final Color PREVIEW_COLOR = new Color(170, 170, 170);
+    private Function<Double, Double> previewFunction;
+    private final List<Function<Double, Double>> frameFunctions = new ArrayList<>();
+    
+    // Per-frame samples: x for each column and y for each curve at those columns
+    private final FramePlanner planner = new FramePlanner();
+    private double[] sampleX = new double[0];
+    private double[][] sampleY = new double[0][];
+    
+    // Samples are kept until the x range, the width or the curves change, so frames that only
+    // move the view vertically or redraw the hover crosshair don't evaluate anything
+    private List<Object> frameCurveKeys = new ArrayList<>();
+    private List<Object> sampledCurveKeys = new ArrayList<>();
+    private double sampledXMin;
+    private double sampledXMax;
+    private int sampledPoints = -1;
+    
+    // Auto-fit: the y range covers the samples between these percentiles when a few outliers
+    // (poles) stretch the full range to more than FIT_OUTLIER_RATIO times that, plus a margin
+    private static final double FIT_TRIM = 0.02;
+    private static final double FIT_OUTLIER_RATIO = 2;
+    private static final double FIT_MARGIN = 0.05;
+    private boolean continuousAutoFit = false;
+    private double[] fitValues = new double[0];
+    
+    // Hover crosshair on the curve nearest the pointer, found from the sampled column under it
+    private static final int HOVER_RADIUS = 20;
+    private static final int HOVER_DOT = 4;
+    private static final Font HOVER_FONT = new Font("Arial", Font.PLAIN, 12);
+    private static final Color CROSSHAIR_COLOR = new Color(0, 0, 0, 80);
+    private int hoverCurve = -1;
+    private double hoverX;
+    private double hoverY;
+    private String hoverLabel;
+    // Area the crosshair was last painted in, repainted when it moves
+    private final Rectangle hoverBounds = new Rectangle();
+    
+    // Reusable geometry and scratch buffers for drawing curves
+    private final Line2D.Float curveSegment = new Line2D.Float();
+    private float[] runX = new float[0];
+    private float[] runY = new float[0];
+    private float[] simplifiedX = new float[0];
+    private float[] simplifiedY = new float[0];
+    
     public GraphingCalculator() {
         setPreferredSize(new Dimension(800, 600));
         setBackground(Color.WHITE);
@@ -43,6 +93,11 @@ public class GraphingCalculator extends JPanel {
             public void mouseReleased(MouseEvent e) {
                 isDragging = false;
             }
+            
+            @Override
+            public void mouseExited(MouseEvent e) {
+                updateHover(null);
+            }
         });
         
         // For zooming and panning
@@ -50,6 +105,7 @@ public class GraphingCalculator extends JPanel {
             @Override
             public void mouseDragged(MouseEvent e) {
                 if (isDragging) {
+                    hoverCurve = -1;
                     int dx = e.getX() - dragStart.x;
                     int dy = e.getY() - dragStart.y;
                     
@@ -69,6 +125,11 @@ public class GraphingCalculator extends JPanel {
                     repaint();
                 }
             }
+            
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                updateHover(e.getPoint());
+            }
         });
         
         // For zooming with mouse wheel
@@ -94,6 +155,7 @@ public class GraphingCalculator extends JPanel {
             yMin = newYMin;
             yMax = newYMax;
             
+            hoverCurve = -1;
             repaint();
         });
     }
@@ -104,9 +166,16 @@ public class GraphingCalculator extends JPanel {
         repaint();
     }
     
+    // Shows (or with null, hides) the preview curve
+    public void setPreviewFunction(Function<Double, Double> function) {
+        previewFunction = function;
+        repaint();
+    }
+    
     public void clearFunctions() {
         functions.clear();
         functionColors.clear();
+        hoverCurve = -1;
         repaint();
     }
     
@@ -126,15 +195,30 @@ public class GraphingCalculator extends JPanel {
         return (int) ((yMax - worldY) / (yMax - yMin) * getHeight());
     }
     
+    // Sub-pixel variants used for curve geometry
+    private double toScreenX(double worldX) {
+        return (worldX - xMin) / (xMax - xMin) * getWidth();
+    }
+    
+    private double toScreenY(double worldY) {
+        return (yMax - worldY) / (yMax - yMin) * getHeight();
+    }
+    
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         Graphics2D g2 = (Graphics2D) g;
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         
+        // Sample before anything is drawn so a continuous fit applies to this frame
+        if (updateSamples() && continuousAutoFit) {
+            fitY();
+        }
+        
         drawGrid(g2);
         drawAxes(g2);
         drawFunctions(g2);
+        drawHover(g2);
     }
     
     private void drawGrid(Graphics2D g2) {
@@ -245,51 +329,435 @@ public class GraphingCalculator extends JPanel {
         }
     }
     
+    // Brings the samples up to date with the x range, width and curves; returns true if
+    // they had to be evaluated again
+    private boolean updateSamples() {
+        // Sample points along the x-axis
+        int numPoints = getWidth();
+        if (numPoints <= 0) {
+            return false;
+        }
+        double dx = (xMax - xMin) / numPoints;
+        
+        // The preview, if any, is sampled with the other curves in the last buffer
+        frameFunctions.clear();
+        frameFunctions.addAll(functions);
+        if (previewFunction != null) {
+            frameFunctions.add(previewFunction);
+        }
+        ensureSampleCapacity(frameFunctions.size(), numPoints);
+        
+        // A curve is identified by its compiled tree, which changes when a saved function it uses is redefined
+        frameCurveKeys.clear();
+        for (Function<Double, Double> function : frameFunctions) {
+            frameCurveKeys.add(function instanceof AdvancedCalculator.CompiledFunction compiledFunction
+                    ? compiledFunction.current() : function);
+        }
+        if (numPoints != sampledPoints || xMin != sampledXMin || xMax != sampledXMax
+                || !sameCurves(frameCurveKeys, sampledCurveKeys)) {
+            // Evaluate every curve in one pass so shared sub-expressions are computed once
+            for (int j = 0; j < numPoints; j++) {
+                sampleX[j] = xMin + j * dx;
+            }
+            planner.evaluate(frameFunctions, sampleX, numPoints, sampleY);
+            
+            sampledPoints = numPoints;
+            sampledXMin = xMin;
+            sampledXMax = xMax;
+            List<Object> keys = sampledCurveKeys;
+            sampledCurveKeys = frameCurveKeys;
+            frameCurveKeys = keys;
+            return true;
+        }
+        return false;
+    }
+    
     private void drawFunctions(Graphics2D g2) {
         g2.setStroke(new BasicStroke(2));
         
+        int numPoints = getWidth();
+        if (numPoints <= 0) {
+            return;
+        }
+        
+        // The simplification tolerance is in device pixels so HiDPI scaling keeps sub-pixel detail
+        double deviceScale = Math.max(1, g2.getTransform().getScaleX());
+        
         // Draw each function
-        for (int i = 0; i < functions.size(); i++) {
-            Function<Double, Double> function = functions.get(i);
-            g2.setColor(functionColors.get(i));
-            
-            // Sample points along the x-axis
-            int numPoints = getWidth();
-            double dx = (xMax - xMin) / numPoints;
+        for (int i = 0; i < frameFunctions.size(); i++) {
+            double[] ys = sampleY[i];
+            g2.setColor(i < functionColors.size() ? functionColors.get(i) : PREVIEW_COLOR);
             
-            // Arrays to store points to draw
-            int[] xPoints = new int[numPoints];
-            int[] yPoints = new int[numPoints];
-            boolean[] valid = new boolean[numPoints];
-            int validCount = 0;
-            
-            // Calculate points
+            // Collect continuous runs of valid points and draw each one as a reduced polyline
+            int runLength = 0;
             for (int j = 0; j < numPoints; j++) {
-                double x = xMin + j * dx;
-                try {
-                    double y = function.apply(x);
-                    
-                    // Check if y is within bounds and not NaN or Infinity
-                    if (!Double.isNaN(y) && !Double.isInfinite(y) && y >= yMin && y <= yMax) {
-                        xPoints[j] = worldToScreenX(x);
-                        yPoints[j] = worldToScreenY(y);
-                        valid[j] = true;
-                        validCount++;
-                    } else {
-                        valid[j] = false;
-                    }
-                } catch (Exception e) {
-                    valid[j] = false;
+                double x = sampleX[j];
+                double y = ys[j];
+                
+                // Check if y is within bounds and not NaN or Infinity
+                if (!Double.isNaN(y) && !Double.isInfinite(y) && y >= yMin && y <= yMax) {
+                    runX[runLength] = (float) toScreenX(x);
+                    runY[runLength] = (float) toScreenY(y);
+                    runLength++;
+                } else {
+                    drawRun(g2, runLength, deviceScale);
+                    runLength = 0;
+                }
+            }
+            drawRun(g2, runLength, deviceScale);
+        }
+    }
+    
+    // Fits the y range to the visible curves, ignoring poles. The frame's samples are reused,
+    // so the repaint that follows draws the new view without evaluating again.
+    // Returns false, leaving the view alone, if no curve has a finite value in the x range.
+    public boolean autoFitY() {
+        updateSamples();
+        if (!fitY()) {
+            return false;
+        }
+        updateHover(null);
+        repaint();
+        return true;
+    }
+    
+    // Refits the y range whenever the x range, width or curves change
+    public void setContinuousAutoFit(boolean continuousAutoFit) {
+        this.continuousAutoFit = continuousAutoFit;
+        if (continuousAutoFit) {
+            autoFitY();
+        }
+    }
+    
+    private boolean fitY() {
+        if (sampledPoints != getWidth() || sampledPoints <= 0) {
+            return false;
+        }
+        
+        int capacity = frameFunctions.size() * sampledPoints;
+        if (fitValues.length < capacity) {
+            fitValues = new double[capacity];
+        }
+        int n = 0;
+        for (int i = 0; i < frameFunctions.size(); i++) {
+            double[] ys = sampleY[i];
+            for (int j = 0; j < sampledPoints; j++) {
+                if (Double.isFinite(ys[j])) {
+                    fitValues[n++] = ys[j];
                 }
             }
+        }
+        if (n == 0) {
+            return false;
+        }
+        
+        // Min and max as a parallel reduction, the percentiles by selection; both are linear
+        DoubleSummaryStatistics range = Arrays.stream(fitValues, 0, n).parallel().summaryStatistics();
+        double low = range.getMin();
+        double high = range.getMax();
+        int trim = (int) (n * FIT_TRIM);
+        double trimmedLow = low;
+        double trimmedHigh = high;
+        if (trim > 0) {
+            trimmedLow = select(fitValues, 0, n, trim);
+            // Everything from index trim on is now at least trimmedLow, so the upper percentile is in there
+            trimmedHigh = select(fitValues, trim, n, n - 1 - trim);
+        }
+        if (high - low > FIT_OUTLIER_RATIO * (trimmedHigh - trimmedLow)) {
+            low = trimmedLow;
+            high = trimmedHigh;
+        }
+        
+        double margin = (high - low) * FIT_MARGIN;
+        if (margin == 0) {
+            // A flat line: center it in a small range
+            margin = Math.max(1, Math.abs(low) * FIT_MARGIN);
+        }
+        double newYMin = low - margin;
+        double newYMax = high + margin;
+        if (!Double.isFinite(newYMin) || !Double.isFinite(newYMax) || !(newYMin < newYMax)) {
+            return false;
+        }
+        yMin = newYMin;
+        yMax = newYMax;
+        return true;
+    }
+    
+    // Returns the k-th smallest of values[from, to), reordering that range so smaller values
+    // come before index k and larger ones after it (quickselect, expected linear time)
+    static double select(double[] values, int from, int to, int k) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo < hi) {
+            double a = values[lo];
+            double b = values[(lo + hi) >>> 1];
+            double c = values[hi];
+            double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
             
-            // Draw line segments
-            for (int j = 0; j < numPoints - 1; j++) {
-                if (valid[j] && valid[j + 1]) {
-                    g2.drawLine(xPoints[j], yPoints[j], xPoints[j + 1], yPoints[j + 1]);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double swap = values[i];
+                    values[i++] = values[j];
+                    values[j--] = swap;
                 }
             }
+            
+            // values[lo..j] <= pivot <= values[i..hi], and anything in between equals the pivot
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return values[k];
+            }
         }
+        return values[k];
+    }
+    
+    private static boolean sameCurves(List<Object> a, List<Object> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Forces the next frame to evaluate every curve again (used by GraphBenchmark)
+    void invalidateSamples() {
+        sampledPoints = -1;
+    }
+    
+    private void ensureSampleCapacity(int curveCount, int numPoints) {
+        if (sampleY.length < curveCount) {
+            sampleY = Arrays.copyOf(sampleY, curveCount);
+        }
+        // Rows are checked one by one: a row added while the panel was narrow is shorter than the others
+        for (int i = 0; i < curveCount; i++) {
+            if (sampleY[i] == null || sampleY[i].length < numPoints) {
+                sampleY[i] = new double[numPoints];
+            }
+        }
+        if (sampleX.length < numPoints) {
+            sampleX = new double[numPoints];
+        }
+        if (runX.length < numPoints) {
+            runX = new float[numPoints];
+            runY = new float[numPoints];
+            simplifiedX = new float[numPoints];
+            simplifiedY = new float[numPoints];
+        }
+    }
+    
+    // Moves the crosshair to the curve nearest the pointer, repainting only the old and new crosshair areas
+    private void updateHover(Point point) {
+        repaint(hoverBounds);
+        hoverCurve = point == null ? -1 : findNearestCurve(point);
+        if (hoverCurve >= 0) {
+            hoverBounds.setBounds(hoverArea(null));
+            repaint(hoverBounds);
+        } else {
+            hoverBounds.setBounds(0, 0, 0, 0);
+        }
+    }
+    
+    // Looks up each curve in the last frame's samples for the pointer's column (O(1) per curve),
+    // then refines only the nearest one with a single evaluation at the pointer's exact x
+    private int findNearestCurve(Point point) {
+        int column = point.x;
+        if (sampledPoints != getWidth() || xMin != sampledXMin || xMax != sampledXMax
+                || column < 0 || column >= sampledPoints) {
+            return -1;
+        }
+        
+        int nearest = -1;
+        double best = HOVER_RADIUS;
+        for (int i = 0; i < functions.size() && i < sampleY.length; i++) {
+            double y0 = sampleY[i][column];
+            if (!Double.isFinite(y0)) {
+                continue;
+            }
+            double y1 = column + 1 < sampledPoints ? sampleY[i][column + 1] : y0;
+            if (!Double.isFinite(y1)) {
+                y1 = y0;
+            }
+            
+            // Distance to the vertical span the curve covers within this column, so steep curves are easy to hit
+            double top = toScreenY(Math.max(y0, y1));
+            double bottom = toScreenY(Math.min(y0, y1));
+            double distance = point.y < top ? top - point.y : point.y > bottom ? point.y - bottom : 0;
+            if (distance < best) {
+                best = distance;
+                nearest = i;
+            }
+        }
+        if (nearest < 0) {
+            return -1;
+        }
+        
+        // Samples sit at the left edge of each column; report the value at the column's centre
+        double x = xMin + (column + 0.5) * (xMax - xMin) / sampledPoints;
+        double y;
+        try {
+            y = functions.get(nearest).apply(x);
+        } catch (RuntimeException e) {
+            return -1;
+        }
+        if (!Double.isFinite(y)) {
+            return -1;
+        }
+        hoverX = x;
+        hoverY = y;
+        hoverLabel = String.format("x = %.4g, y = %.4g", x, y);
+        return nearest;
+    }
+    
+    private void drawHover(Graphics2D g2) {
+        if (hoverCurve < 0 || hoverCurve >= functions.size()) {
+            hoverBounds.setBounds(0, 0, 0, 0);
+            return;
+        }
+        hoverBounds.setBounds(hoverArea(g2));
+    }
+    
+    // Computes the crosshair's geometry and, given a graphics context, also draws it
+    private Rectangle hoverArea(Graphics2D g2) {
+        int px = (int) Math.round(toScreenX(hoverX));
+        int py = (int) Math.round(toScreenY(hoverY));
+        
+        FontMetrics fm = getFontMetrics(HOVER_FONT);
+        int labelWidth = fm.stringWidth(hoverLabel) + 8;
+        int labelHeight = fm.getHeight() + 4;
+        int labelX = px + 8 + labelWidth <= getWidth() ? px + 8 : px - 8 - labelWidth;
+        int labelY = Math.max(0, py - 8 - labelHeight);
+        
+        if (g2 != null) {
+            g2.setStroke(new BasicStroke(1));
+            g2.setColor(CROSSHAIR_COLOR);
+            g2.draw(new Line2D.Double(px, 0, px, getHeight()));
+            
+            g2.setColor(functionColors.get(hoverCurve));
+            g2.fillOval(px - HOVER_DOT, py - HOVER_DOT, 2 * HOVER_DOT, 2 * HOVER_DOT);
+            g2.drawRect(labelX, labelY, labelWidth, labelHeight);
+            g2.setColor(Color.WHITE);
+            g2.fillRect(labelX + 1, labelY + 1, labelWidth - 1, labelHeight - 1);
+            g2.setColor(Color.BLACK);
+            g2.setFont(HOVER_FONT);
+            g2.drawString(hoverLabel, labelX + 4, labelY + 2 + fm.getAscent());
+        }
+        
+        // Margin for antialiasing
+        Rectangle area = new Rectangle(px - 2, 0, 5, getHeight());
+        area.add(new Rectangle(px - HOVER_DOT - 2, py - HOVER_DOT - 2, 2 * HOVER_DOT + 5, 2 * HOVER_DOT + 5));
+        area.add(new Rectangle(labelX - 2, labelY - 2, labelWidth + 5, labelHeight + 5));
+        return area;
+    }
+    
+    private void drawRun(Graphics2D g2, int runLength, double deviceScale) {
+        // A single point has no segment to draw
+        if (runLength < 2) {
+            return;
+        }
+        
+        int count = simplifyCollinear(runX, runY, runLength,
+                (float) (SIMPLIFY_TOLERANCE / deviceScale), simplifiedX, simplifiedY);
+        
+        // Wide antialiased Line2D shapes take Java2D's parallelogram fast path, which beats
+        // stroking one long Path2D through the general rasterizer, so draw the reduced polyline
+        // as segments through a single reused line
+        for (int k = 1; k < count; k++) {
+            curveSegment.setLine(simplifiedX[k - 1], simplifiedY[k - 1], simplifiedX[k], simplifiedY[k]);
+            g2.draw(curveSegment);
+        }
+    }
+    
+    // Drops points that lie within the given tolerance of the segment that replaces them,
+    // so straight or gently curving stretches become a few long segments. Keeps the window of
+    // directions from the last kept point that pass close enough to every skipped point.
+    static int simplifyCollinear(float[] xs, float[] ys, int n, float tolerance, float[] outX, float[] outY) {
+        if (n < 3) {
+            System.arraycopy(xs, 0, outX, 0, n);
+            System.arraycopy(ys, 0, outY, 0, n);
+            return n;
+        }
+        
+        int out = 0;
+        int anchor = 0;
+        outX[out] = xs[0];
+        outY[out++] = ys[0];
+        
+        // Window bounds as direction vectors, unbounded until the first point leaves the tolerance
+        boolean bounded = false;
+        double lowX = 0, lowY = 0, highX = 0, highY = 0;
+        double farthest = 0;
+        
+        for (int i = 1; i < n; i++) {
+            double dx = xs[i] - xs[anchor];
+            double dy = ys[i] - ys[anchor];
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            
+            // Point i can end the segment only if its direction fits every skipped point
+            // and it does not stop short of one of them
+            boolean fits = distance + tolerance >= farthest
+                    && (!bounded || (lowX * dy - lowY * dx >= 0 && dx * highY - dy * highX >= 0));
+            if (!fits && i - 1 > anchor) {
+                anchor = i - 1;
+                outX[out] = xs[anchor];
+                outY[out++] = ys[anchor];
+                
+                dx = xs[i] - xs[anchor];
+                dy = ys[i] - ys[anchor];
+                distance = Math.sqrt(dx * dx + dy * dy);
+                bounded = false;
+                farthest = 0;
+            }
+            farthest = Math.max(farthest, distance);
+            if (distance <= tolerance) {
+                continue;
+            }
+            
+            // Tangent directions from the anchor to the tolerance circle around point i
+            double ux = dx / distance;
+            double uy = dy / distance;
+            double sin = tolerance / distance;
+            double cos = Math.sqrt(1 - sin * sin);
+            double candidateLowX = ux * cos + uy * sin;
+            double candidateLowY = uy * cos - ux * sin;
+            double candidateHighX = ux * cos - uy * sin;
+            double candidateHighY = uy * cos + ux * sin;
+            
+            if (!bounded) {
+                lowX = candidateLowX;
+                lowY = candidateLowY;
+                highX = candidateHighX;
+                highY = candidateHighY;
+                bounded = true;
+            } else {
+                if (lowX * candidateLowY - lowY * candidateLowX > 0) {
+                    lowX = candidateLowX;
+                    lowY = candidateLowY;
+                }
+                if (candidateHighX * highY - candidateHighY * highX > 0) {
+                    highX = candidateHighX;
+                    highY = candidateHighY;
+                }
+            }
+        }
+        
+        outX[out] = xs[n - 1];
+        outY[out++] = ys[n - 1];
+        return out;
     }
     
     public void zoomIn() {
@@ -303,6 +771,7 @@ public class GraphingCalculator extends JPanel {
         yMin = centerY - rangeY / 2;
         yMax = centerY + rangeY / 2;
         
+        updateHover(null);
         repaint();
     }
     
@@ -317,6 +786,7 @@ public class GraphingCalculator extends JPanel {
         yMin = centerY - rangeY / 2;
         yMax = centerY + rangeY / 2;
         
+        updateHover(null);
         repaint();
     }
     
@@ -325,6 +795,35 @@ public class GraphingCalculator extends JPanel {
         xMax = 10;
         yMin = -10;
         yMax = 10;
+        updateHover(null);
+        repaint();
+    }
+    
+    public void setView(double xMin, double xMax, double yMin, double yMax) {
+        if (!(xMin < xMax) || !(yMin < yMax)) {
+            throw new IllegalArgumentException("Invalid view range");
+        }
+        this.xMin = xMin;
+        this.xMax = xMax;
+        this.yMin = yMin;
+        this.yMax = yMax;
+        updateHover(null);
         repaint();
     }
+    
+    public double getXMin() {
+        return xMin;
+    }
+    
+    public double getXMax() {
+        return xMax;
+    }
+    
+    public double getYMin() {
+        return yMin;
+    }
+    
+    public double getYMax() {
+        return yMax;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,373 @@
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Persists saved functions, plotted curves and the viewport in a versioned binary file.
+//
+// The file is a header followed by an append-only log of records. Every change is appended
+// by a single background writer thread, so callers on the EDT never wait for the disk. When
+// the log holds many more records than there is live state, the writer rewrites it as a
+// compact snapshot. Loading maps the file into memory and replays the records.
+//
+// Only one calculator may write a session file. The first one to open it holds a lock on a
+// sibling ".lock" file; later ones load the session read-only and do not save their changes.
+//
+// Layout (big-endian):
+//   header: int MAGIC, short VERSION
+//   record: byte type, int payloadLength, payload
+//   string: int byteLength, UTF-8 bytes
+public final class SessionStore implements Closeable {
+    private static final int MAGIC = 0x47435353; // "GCSS"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 6;
+
+    private static final byte SAVE_FUNCTION = 1; // string name, string expression
+    private static final byte ADD_CURVE = 2;     // string expression, int rgb
+    private static final byte CLEAR_CURVES = 3;  // no payload
+    private static final byte VIEWPORT = 4;      // double xMin, xMax, yMin, yMax
+
+    // Compact once the log has this many records and more than twice the live state
+    private static final int COMPACT_MIN_RECORDS = 1024;
+
+    private static final Logger LOGGER = Logger.getLogger(SessionStore.class.getName());
+
+    private final Path file;
+    private final Session loaded;
+    // Holds the writer lock for the life of the store; null when opened read-only
+    private final FileChannel lockChannel;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "session-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Owned by the writer thread after construction
+    private final Session state;
+    private FileChannel channel;
+    private int recordCount;
+
+    public record Curve(String expression, Color color) {}
+
+    // Everything a session restores; functions keep their save order
+    public static final class Session {
+        private final Map<String, String> functions = new LinkedHashMap<>();
+        private final List<Curve> curves = new ArrayList<>();
+        private double[] viewport;
+
+        public Map<String, String> getFunctions() {
+            return Collections.unmodifiableMap(functions);
+        }
+
+        public List<Curve> getCurves() {
+            return Collections.unmodifiableList(curves);
+        }
+
+        // xMin, xMax, yMin, yMax, or null if none was stored
+        public double[] getViewport() {
+            return viewport == null ? null : viewport.clone();
+        }
+
+        private Session copy() {
+            Session copy = new Session();
+            copy.functions.putAll(functions);
+            copy.curves.addAll(curves);
+            copy.viewport = viewport == null ? null : viewport.clone();
+            return copy;
+        }
+
+        private int liveRecords() {
+            return functions.size() + curves.size() + (viewport == null ? 0 : 1);
+        }
+    }
+
+    private SessionStore(Path file, Session loaded, int recordCount, long validLength,
+                         FileChannel lockChannel) throws IOException {
+        this.file = file;
+        this.loaded = loaded;
+        this.state = loaded.copy();
+        this.recordCount = recordCount;
+        this.lockChannel = lockChannel;
+        this.channel = lockChannel == null ? null : openForAppend(file, validLength);
+    }
+
+    public static SessionStore open(Path file) throws IOException {
+        FileChannel lockChannel = acquireWriterLock(file);
+        try {
+            Session session = new Session();
+            int[] recordCount = {0};
+            long validLength = Files.exists(file) ? read(file, session, recordCount) : 0;
+            return new SessionStore(file, session, recordCount[0], validLength, lockChannel);
+        } catch (IOException | RuntimeException e) {
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+            throw e;
+        }
+    }
+
+    public Session getLoadedSession() {
+        return loaded;
+    }
+
+    // True when another calculator holds the session file; changes are then not saved
+    public boolean isReadOnly() {
+        return lockChannel == null;
+    }
+
+    public void saveFunction(String name, String expression) {
+        submit(SAVE_FUNCTION, encode(buffer -> {
+            putString(buffer, name);
+            putString(buffer, expression);
+        }, stringSize(name) + stringSize(expression)));
+    }
+
+    public void addCurve(String expression, Color color) {
+        submit(ADD_CURVE, encode(buffer -> {
+            putString(buffer, expression);
+            buffer.putInt(color.getRGB());
+        }, stringSize(expression) + Integer.BYTES));
+    }
+
+    public void clearCurves() {
+        submit(CLEAR_CURVES, new byte[0]);
+    }
+
+    public void setViewport(double xMin, double xMax, double yMin, double yMax) {
+        submit(VIEWPORT, encode(buffer -> {
+            buffer.putDouble(xMin);
+            buffer.putDouble(xMax);
+            buffer.putDouble(yMin);
+            buffer.putDouble(yMax);
+        }, 4 * Double.BYTES));
+    }
+
+    // Waits for pending writes to reach the disk, then releases the file
+    @Override
+    public void close() throws IOException {
+        if (lockChannel == null) {
+            writer.shutdown();
+            return;
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warning("Timed out flushing session to " + file);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } finally {
+            lockChannel.close(); // Releases the lock
+        }
+    }
+
+    // Returns the open lock file, or null if another calculator is already writing this session
+    private static FileChannel acquireWriterLock(Path file) throws IOException {
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null; // Held by another store in this JVM
+        }
+        if (lock == null) {
+            lockChannel.close();
+            LOGGER.warning("Session " + file + " is in use by another calculator; changes in this window will not be saved");
+            return null;
+        }
+        return lockChannel;
+    }
+
+    private void submit(byte type, byte[] payload) {
+        if (lockChannel == null) {
+            return;
+        }
+        writer.execute(() -> {
+            try {
+                apply(state, type, ByteBuffer.wrap(payload));
+                ByteBuffer record = ByteBuffer.allocate(1 + Integer.BYTES + payload.length);
+                record.put(type).putInt(payload.length).put(payload).flip();
+                writeFully(channel, record);
+                recordCount++;
+
+                if (recordCount >= COMPACT_MIN_RECORDS && recordCount > 2 * state.liveRecords()) {
+                    compact();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not write session to " + file, e);
+            }
+        });
+    }
+
+    // Rewrites the log as one record per live entry and swaps it in atomically
+    private void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int written = 0;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, header());
+            for (Map.Entry<String, String> entry : state.functions.entrySet()) {
+                writeFully(out, snapshotRecord(SAVE_FUNCTION, buffer -> {
+                    putString(buffer, entry.getKey());
+                    putString(buffer, entry.getValue());
+                }, stringSize(entry.getKey()) + stringSize(entry.getValue())));
+                written++;
+            }
+            for (Curve curve : state.curves) {
+                writeFully(out, snapshotRecord(ADD_CURVE, buffer -> {
+                    putString(buffer, curve.expression());
+                    buffer.putInt(curve.color().getRGB());
+                }, stringSize(curve.expression()) + Integer.BYTES));
+                written++;
+            }
+            if (state.viewport != null) {
+                double[] viewport = state.viewport;
+                writeFully(out, snapshotRecord(VIEWPORT, buffer -> {
+                    for (double value : viewport) {
+                        buffer.putDouble(value);
+                    }
+                }, 4 * Double.BYTES));
+                written++;
+            }
+            out.force(true);
+        }
+
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = openForAppend(file, Files.size(file));
+        recordCount = written;
+    }
+
+    private static long read(Path file, Session session, int[] recordCount) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < HEADER_SIZE) {
+                return 0;
+            }
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a calculator session file: " + file);
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported session file version " + version + ": " + file);
+            }
+
+            // Replay complete records. Replay stops at a torn record (crash mid-write) or one that
+            // can't be read; the writer truncates the file there, so a damaged file repairs itself.
+            while (buffer.remaining() >= 1 + Integer.BYTES) {
+                int start = buffer.position();
+                byte type = buffer.get();
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    buffer.position(start);
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                try {
+                    apply(session, type, payload);
+                } catch (IOException | BufferUnderflowException e) {
+                    LOGGER.log(Level.WARNING, "Dropping unreadable session records from offset " + start + " in " + file, e);
+                    buffer.position(start);
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+                recordCount[0]++;
+            }
+            return buffer.position();
+        }
+    }
+
+    private static void apply(Session session, byte type, ByteBuffer payload) throws IOException {
+        switch (type) {
+            case SAVE_FUNCTION -> session.functions.put(getString(payload), getString(payload));
+            case ADD_CURVE -> session.curves.add(new Curve(getString(payload), new Color(payload.getInt(), true)));
+            case CLEAR_CURVES -> session.curves.clear();
+            case VIEWPORT -> session.viewport = new double[] {
+                payload.getDouble(), payload.getDouble(), payload.getDouble(), payload.getDouble()
+            };
+            default -> throw new IOException("Unknown session record type: " + type);
+        }
+    }
+
+    private static FileChannel openForAppend(Path file, long validLength) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (validLength < HEADER_SIZE) {
+            channel.truncate(0);
+            writeFully(channel, header());
+        } else {
+            channel.truncate(validLength);
+            channel.position(validLength);
+        }
+        return channel;
+    }
+
+    private static ByteBuffer header() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort(VERSION).flip();
+    }
+
+    private static ByteBuffer snapshotRecord(byte type, PayloadWriter payloadWriter, int payloadSize) {
+        byte[] payload = encode(payloadWriter, payloadSize);
+        return ByteBuffer.allocate(1 + Integer.BYTES + payload.length)
+                .put(type).putInt(payload.length).put(payload).flip();
+    }
+
+    private static byte[] encode(PayloadWriter payloadWriter, int payloadSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(payloadSize);
+        payloadWriter.write(buffer);
+        return buffer.array();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int stringSize(String value) {
+        return Integer.BYTES + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Corrupt string in session file");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private interface PayloadWriter {
+        void write(ByteBuffer buffer);
+    }
+}
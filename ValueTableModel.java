@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.table.AbstractTableModel;
+
+// Table of x against several compiled expressions over evenly spaced x values.
+//
+// Nothing is stored up front: rows are computed in blocks when the table first asks for
+// them, and only the most recently used blocks are kept, so a table with millions of rows
+// costs no more memory than the part that has been scrolled through lately.
+public final class ValueTableModel extends AbstractTableModel {
+    private static final int BLOCK_ROWS = 512;
+    private static final int MAX_CACHED_BLOCKS = 32;
+
+    private final List<CompiledExpression> expressions;
+    private final double xStart;
+    private final double step;
+    private final int rowCount;
+
+    // Blocks in access order; the least recently used one is dropped and its arrays reused
+    private double[][] spareBlock;
+    private final Map<Integer, double[][]> blocks = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, double[][]> eldest) {
+            if (size() > MAX_CACHED_BLOCKS) {
+                spareBlock = eldest.getValue();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public ValueTableModel(List<CompiledExpression> expressions, double xStart, double step, int rowCount) {
+        if (!(step > 0) || !Double.isFinite(xStart) || rowCount < 0) {
+            throw new IllegalArgumentException("Invalid table range");
+        }
+        this.expressions = List.copyOf(expressions);
+        this.xStart = xStart;
+        this.step = step;
+        this.rowCount = rowCount;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return expressions.size() + 1;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return column == 0 ? "x" : expressions.get(column - 1).getSource();
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return Double.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (column == 0) {
+            return xAt(row);
+        }
+        return block(row / BLOCK_ROWS)[column - 1][row % BLOCK_ROWS];
+    }
+
+    // Multiplied rather than accumulated so rows far down the table don't drift
+    public double xAt(int row) {
+        return xStart + row * step;
+    }
+
+    // Writes the whole table as CSV one row at a time, without going through the block cache.
+    // Safe to call off the EDT: compiled expressions are immutable.
+    public void writeCsv(Writer out) throws IOException {
+        out.write("x");
+        for (CompiledExpression expression : expressions) {
+            out.write(',');
+            out.write(csvQuote(expression.getSource()));
+        }
+        out.write('\n');
+
+        for (int row = 0; row < rowCount; row++) {
+            double x = xAt(row);
+            out.write(Double.toString(x));
+            for (CompiledExpression expression : expressions) {
+                out.write(',');
+                out.write(Double.toString(expression.evaluate(x)));
+            }
+            out.write('\n');
+        }
+    }
+
+    private double[][] block(int index) {
+        double[][] values = blocks.get(index);
+        if (values == null) {
+            values = spareBlock != null ? spareBlock : new double[expressions.size()][BLOCK_ROWS];
+            spareBlock = null;
+            int first = index * BLOCK_ROWS;
+            int count = Math.min(BLOCK_ROWS, rowCount - first);
+            for (int i = 0; i < expressions.size(); i++) {
+                CompiledExpression expression = expressions.get(i);
+                double[] column = values[i];
+                for (int j = 0; j < count; j++) {
+                    column[j] = expression.evaluate(xAt(first + j));
+                }
+            }
+            blocks.put(index, values);
+        }
+        return values;
+    }
+
+    // Expressions can contain commas, e.g. max(x, 1)
+    private static String csvQuote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
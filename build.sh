@@ -0,0 +1,17 @@
+#!/bin/sh
+# Compiles the sources into build/classes and packages them as build/calculator.jar, unless the
+# jar is already newer than every source file. Used by launch.sh and measure-startup.sh; the
+# jar (not the directory) is what the AppCDS archive is made for, since CDS only archives
+# application classes loaded from jar files.
+set -e
+cd "$(dirname "$0")"
+
+JAR=build/calculator.jar
+
+if [ ! -f "$JAR" ] || [ -n "$(find . -maxdepth 1 -name '*.java' -newer "$JAR")" ]; then
+    echo "Compiling into build/classes..." >&2
+    rm -rf build/classes
+    mkdir -p build/classes
+    javac -d build/classes *.java
+    jar cf "$JAR" -C build/classes .
+fi
@@ -0,0 +1,19 @@
+#!/bin/sh
+# Starts the calculator in fast-startup mode with an application class-data-sharing (AppCDS)
+# archive. Compiles first if the sources changed, and creates the archive with a training run
+# the first time and again whenever the jar is rebuilt.
+set -e
+cd "$(dirname "$0")"
+
+./build.sh
+JAR=build/calculator.jar
+ARCHIVE=build/calculator.jsa
+
+if [ ! -f "$ARCHIVE" ] || [ "$JAR" -nt "$ARCHIVE" ]; then
+    echo "Creating class-data-sharing archive $ARCHIVE (training run)..."
+    java -XX:ArchiveClassesAtExit="$ARCHIVE" \
+        -Dcalculator.fastStartup=true -Dcalculator.exitAfterStartup=true \
+        -cp "$JAR" CalculatorMain
+fi
+
+exec java -XX:SharedArchiveFile="$ARCHIVE" -Dcalculator.fastStartup=true -cp "$JAR" CalculatorMain "$@"
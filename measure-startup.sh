@@ -0,0 +1,33 @@
+#!/bin/sh
+# Reports time-to-first-paint (ms since JVM launch) for the default launch, fast-startup
+# mode, and fast-startup mode with the AppCDS archive. Needs a display.
+# Usage: ./measure-startup.sh [runs]
+set -e
+cd "$(dirname "$0")"
+
+RUNS=${1:-5}
+./build.sh
+JAR=build/calculator.jar
+ARCHIVE=build/calculator.jsa
+
+measure() {
+    label=$1
+    shift
+    total=0
+    for i in $(seq "$RUNS"); do
+        ms=$(java "$@" -Dcalculator.reportStartup=true -Dcalculator.exitAfterStartup=true -cp "$JAR" CalculatorMain \
+            | sed -n 's/^first-paint-ms=//p')
+        total=$((total + ms))
+    done
+    echo "$label: $((total / RUNS)) ms to first paint (average of $RUNS runs)"
+}
+
+if [ ! -f "$ARCHIVE" ] || [ "$JAR" -nt "$ARCHIVE" ]; then
+    java -XX:ArchiveClassesAtExit="$ARCHIVE" \
+        -Dcalculator.fastStartup=true -Dcalculator.exitAfterStartup=true \
+        -cp "$JAR" CalculatorMain > /dev/null
+fi
+
+measure "default         " -Xshare:auto
+measure "fast startup    " -Dcalculator.fastStartup=true
+measure "fast startup+CDS" -Dcalculator.fastStartup=true -XX:SharedArchiveFile="$ARCHIVE"